@@ -0,0 +1,31 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.SubmissionPublisher;
+
+// First stage of a RowPipeline: reads an ARFF file on its own thread and publishes each data row.
+// submit blocks once the next stage's buffer is full, so a slow consumer throttles the reading.
+public class ArffPublisher extends SubmissionPublisher<double[]> implements Runnable {
+
+  ArffReader reader;
+
+  public ArffPublisher(String fileName, Executor executor, int bufferSize) throws Exception {
+    super(executor, bufferSize);
+    this.reader = new ArffReader(fileName);
+  }
+
+  public Matrix getSchema() {
+    return reader.getSchema();
+  }
+
+  public void run() {
+    try {
+      double[] row;
+      while ((row = reader.nextRow()) != null) {
+        submit(row);
+      }
+      reader.close();
+      close();
+    } catch (Exception e) {
+      closeExceptionally(e);
+    }
+  }
+}
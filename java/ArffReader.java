@@ -0,0 +1,57 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+// Reads an ARFF file one data row at a time, so that files larger than memory can be processed.
+// The header is parsed up front into a schema matrix with no rows.
+public class ArffReader {
+
+  BufferedReader reader;
+  Matrix schema = new Matrix();
+
+  public ArffReader(String fileName) throws Exception {
+    reader = new BufferedReader(new FileReader(fileName), 1 << 16);
+    schema.setSize(0, 0);
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.length() > 0 && line.charAt(0) != '%' && schema.parseHeaderLine(line)) {
+        return;
+      }
+    }
+    throw new Exception("No @DATA section in " + fileName);
+  }
+
+  public Matrix getSchema() {
+    return schema;
+  }
+
+  // Returns the next data row, or null at the end of the file
+  public double[] nextRow() throws Exception {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.length() > 0 && line.charAt(0) != '%') {
+        return schema.parseRow(line);
+      }
+    }
+    return null;
+  }
+
+  // Counts the remaining data rows without parsing them, leaving the reader at the end of the file
+  public long countRows() throws Exception {
+    long count = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.length() > 0 && line.charAt(0) != '%') {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  public void close() throws Exception {
+    reader.close();
+  }
+}
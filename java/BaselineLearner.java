@@ -4,6 +4,8 @@
 // ----------------------------------------------------------------
 
 import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 /**
  * For nominal labels, this model simply returns the majority class. For
@@ -15,13 +17,69 @@ public class BaselineLearner extends SupervisedLearner {
 
 	double[] m_labels;
 
+	// The mean for continuous labels and the most common value for nominal ones, kept as running totals
+	// so that more rows can be added later with partialFit
 	public void train(Matrix features, Matrix labels) throws Exception {
-		m_labels = new double[labels.cols()];
-		for(int i = 0; i < labels.cols(); i++) {
-			if(labels.valueCount(i) == 0)
-				m_labels[i] = labels.columnMean(i); // continuous
-			else
-				m_labels[i] = labels.mostCommonValue(i); // nominal
+		initialize(features, labels);
+		partialFit(features, labels);
+	}
+
+	// Running totals for partialFit: per label column, a sum for continuous labels or a count per value for nominal ones
+	double[] m_sums;
+	long[] m_counts;
+	long[][] m_valueCounts;
+
+	public boolean supportsPartialFit() {
+		return true;
+	}
+
+	public boolean trainsInOnePass() {
+		return true;
+	}
+
+	public void initialize(Matrix featureSchema, Matrix labelSchema) throws Exception {
+		int cols = labelSchema.cols();
+		m_labels = new double[cols];
+		m_sums = new double[cols];
+		m_counts = new long[cols];
+		m_valueCounts = new long[cols][];
+		for(int i = 0; i < cols; i++) {
+			m_labels[i] = Matrix.MISSING;
+			if(labelSchema.valueCount(i) > 0)
+				m_valueCounts[i] = new long[labelSchema.valueCount(i)];
+		}
+	}
+
+	// Gives the same answer as train would on all the rows seen so far (ties go to the lowest value, as in mostCommonValue)
+	public void partialFit(Matrix features, Matrix labels) throws Exception {
+		if(m_sums == null)
+			throw new Exception("initialize must be called before partialFit");
+		for(int r = 0; r < labels.rows(); r++) {
+			double[] row = labels.row(r);
+			for(int i = 0; i < m_labels.length; i++) {
+				if(row[i] == Matrix.MISSING)
+					continue;
+				if(m_valueCounts[i] == null) {
+					m_sums[i] += row[i];
+					m_counts[i]++;
+				}
+				else
+					m_valueCounts[i][(int)row[i]]++;
+			}
+		}
+		for(int i = 0; i < m_labels.length; i++) {
+			if(m_valueCounts[i] == null) {
+				m_labels[i] = m_sums[i] / m_counts[i];
+			}
+			else {
+				long maxCount = 0;
+				for(int v = 0; v < m_valueCounts[i].length; v++) {
+					if(m_valueCounts[i][v] > maxCount) {
+						maxCount = m_valueCounts[i][v];
+						m_labels[i] = v;
+					}
+				}
+			}
 		}
 	}
 
@@ -30,4 +88,16 @@ public class BaselineLearner extends SupervisedLearner {
 			labels[i] = m_labels[i];
 	}
 
+	public void writeModel(DataOutputStream out) throws Exception {
+		out.writeInt(m_labels.length);
+		for(int i = 0; i < m_labels.length; i++)
+			out.writeDouble(m_labels[i]);
+	}
+
+	public void readModel(DataInputStream in) throws Exception {
+		m_labels = new double[in.readInt()];
+		for(int i = 0; i < m_labels.length; i++)
+			m_labels[i] = in.readDouble();
+	}
+
 }
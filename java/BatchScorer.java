@@ -0,0 +1,141 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Scores an ARFF file with a saved model (see ModelIO) and writes one predicted label per input row, in input order.
+// Rows are read in chunks and each chunk is predicted on a thread pool with the model shared read-only. At most
+// maxChunksInFlight chunks exist at once, so memory stays bounded however large the input is.
+//
+// java BatchScorer [modelFile] [inputARFF] [outputFile] {[numThreads] [chunkSize]}
+public class BatchScorer {
+
+  int numThreads = Runtime.getRuntime().availableProcessors();
+  int chunkSize = 4096;
+  int maxChunksInFlight = numThreads * 2;
+
+  ModelIO.Model model;
+  int[][] nominalMapping; // Input file's value index -> the model's value index, for each nominal feature
+
+  public BatchScorer(ModelIO.Model model) {
+    this.model = model;
+  }
+
+  // The input file may list nominal values in a different order than the training file did
+  private void buildNominalMapping(Matrix inputSchema) throws Exception {
+    Matrix featureSchema = model.featureSchema;
+    if (inputSchema.cols() < featureSchema.cols()) {
+      throw new Exception("Expected at least " + featureSchema.cols() + " columns, found " + inputSchema.cols());
+    }
+
+    nominalMapping = new int[featureSchema.cols()][];
+    for (int j = 0; j < featureSchema.cols(); ++j) {
+      int vals = inputSchema.valueCount(j);
+      if (vals == 0) {
+        continue;
+      }
+      nominalMapping[j] = new int[vals];
+      for (int v = 0; v < vals; ++v) {
+        Integer modelValue = featureSchema.m_str_to_enum.get(j).get(inputSchema.attrValue(j, v));
+        if (modelValue == null) {
+          throw new Exception("Value '" + inputSchema.attrValue(j, v) + "' of " + inputSchema.attrName(j) + " was not seen in training");
+        }
+        nominalMapping[j][v] = modelValue;
+      }
+    }
+  }
+
+  // Keeps the feature columns (dropping a label column if present) in the model's nominal encoding
+  private double[] toFeatures(double[] row) {
+    double[] features = new double[model.featureSchema.cols()];
+    for (int j = 0; j < features.length; ++j) {
+      double value = row[j];
+      if (nominalMapping[j] != null && value != Matrix.MISSING) {
+        value = nominalMapping[j][(int) value];
+      }
+      features[j] = value;
+    }
+    return features;
+  }
+
+  private double[][] predictChunk(double[][] features) throws Exception {
+    double[][] labels = new double[features.length][1];
+    model.learner.predictBatch(features, labels);
+    return labels;
+  }
+
+  private void writeChunk(BufferedWriter writer, double[][] labels) throws Exception {
+    boolean nominal = model.labelSchema.valueCount(0) > 0;
+    for (double[] label : labels) {
+      writer.write(nominal ? model.labelSchema.attrValue(0, (int) label[0]) : Double.toString(label[0]));
+      writer.newLine();
+    }
+  }
+
+  // Returns the number of rows scored
+  public long score(String inputFile, String outputFile) throws Exception {
+    ArffReader reader = new ArffReader(inputFile);
+    buildNominalMapping(reader.getSchema());
+
+    BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile), 1 << 16);
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    ArrayDeque<Future<double[][]>> inFlight = new ArrayDeque<Future<double[][]>>();
+    long numRows = 0;
+
+    try {
+      boolean moreRows = true;
+      while (moreRows) {
+        double[][] chunk = new double[chunkSize][];
+        int count = 0;
+        double[] row;
+        while (count < chunkSize && (row = reader.nextRow()) != null) {
+          chunk[count++] = toFeatures(row);
+        }
+        moreRows = count == chunkSize;
+
+        if (count > 0) {
+          final double[][] features = count == chunkSize ? chunk : Arrays.copyOf(chunk, count);
+          inFlight.add(pool.submit(() -> predictChunk(features)));
+          numRows += count;
+        }
+
+        // Chunks finish out of order, but are written in the order they were read
+        while (inFlight.size() >= maxChunksInFlight || (!moreRows && !inFlight.isEmpty())) {
+          writeChunk(writer, inFlight.poll().get());
+        }
+      }
+    } finally {
+      pool.shutdown();
+      reader.close();
+      writer.close();
+    }
+
+    return numRows;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.out.println("Usage: BatchScorer [modelFile] [inputARFF] [outputFile] {[numThreads] [chunkSize]}");
+      return;
+    }
+
+    ModelIO.Model model = ModelIO.load(args[0], new Random());
+    BatchScorer scorer = new BatchScorer(model);
+    if (args.length > 3) {
+      scorer.numThreads = Integer.parseInt(args[3]);
+      scorer.maxChunksInFlight = scorer.numThreads * 2;
+    }
+    if (args.length > 4) {
+      scorer.chunkSize = Integer.parseInt(args[4]);
+    }
+
+    long startTime = System.nanoTime();
+    long numRows = scorer.score(args[1], args[2]);
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    System.out.println("Scored " + numRows + " rows with " + model.learnerName + " in (seconds): " + seconds + " (" + (long) (numRows / seconds) + " rows/s)");
+  }
+}
@@ -1,6 +1,8 @@
 import javafx.util.Pair;
 import java.util.Random;
 import java.util.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class DecisionTree extends SupervisedLearner {
 
@@ -207,6 +209,9 @@ public class DecisionTree extends SupervisedLearner {
 //      System.out.println(t + " -> " + featureOutputCount.get(t));
 //    }
 
+    TrainingEvents.TreeSplit splitEvent = new TrainingEvents.TreeSplit();
+    splitEvent.begin();
+
     // Get the feature that returns the lowest info at that level
     int bestFeatureInfo = -1;
     double bestFeatureInfoValue = Integer.MAX_VALUE;
@@ -291,6 +296,14 @@ public class DecisionTree extends SupervisedLearner {
       System.out.println("DIVIDED: " + currentDivisor.name);
     }
 
+    if (splitEvent.shouldCommit()) {
+      splitEvent.feature = featureName;
+      splitEvent.instances = numInstances;
+      splitEvent.candidateFeatures = numRemainingFeatures;
+      splitEvent.information = bestFeatureInfoValue;
+      splitEvent.commit();
+    }
+
     // For each divisor value for the feature, update the tree below it
     int numFeatureValues = features.valueCount(bestFeatureInfo);
     for (int i = 0; i < numFeatureValues; ++i) {
@@ -352,6 +365,53 @@ public class DecisionTree extends SupervisedLearner {
     }
   }
 
+  public void writeModel(DataOutputStream out) throws Exception {
+    out.writeInt(averageValueForFeature.size());
+    for (Integer feature : averageValueForFeature.keySet()) {
+      out.writeInt(feature);
+      out.writeInt(averageValueForFeature.get(feature));
+    }
+    writeDivisor(out, rootDivisor);
+  }
+
+  // The tree is flattened in preorder, each node followed by its children
+  private void writeDivisor(DataOutputStream out, FeatureDivisor divisor) throws Exception {
+    out.writeInt(divisor.featureColumn);
+    out.writeBoolean(divisor.isLeafNode);
+    out.writeInt(divisor.outputValue);
+    out.writeInt(divisor.divisorMap.size());
+    for (Integer featureValue : divisor.divisorMap.keySet()) {
+      FeatureDivisor child = divisor.divisorMap.get(featureValue);
+      out.writeInt(featureValue);
+      out.writeBoolean(child != null); // Pruned branches are kept as null entries
+      if (child != null) {
+        writeDivisor(out, child);
+      }
+    }
+  }
+
+  public void readModel(DataInputStream in) throws Exception {
+    averageValueForFeature = new HashMap<>();
+    int numFeatures = in.readInt();
+    for (int i = 0; i < numFeatures; ++i) {
+      averageValueForFeature.put(in.readInt(), in.readInt());
+    }
+    rootDivisor = readDivisor(in, "Root");
+  }
+
+  private FeatureDivisor readDivisor(DataInputStream in, String name) throws Exception {
+    FeatureDivisor divisor = new FeatureDivisor(name);
+    divisor.featureColumn = in.readInt();
+    divisor.isLeafNode = in.readBoolean();
+    divisor.outputValue = in.readInt();
+    int numChildren = in.readInt();
+    for (int i = 0; i < numChildren; ++i) {
+      int featureValue = in.readInt();
+      divisor.divisorMap.put(featureValue, in.readBoolean() ? readDivisor(in, "LEAF") : null);
+    }
+    return divisor;
+  }
+
   public void predict(double[] features, double[] labels) throws Exception {
 
     FeatureDivisor currentDivisor = rootDivisor;
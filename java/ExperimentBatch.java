@@ -0,0 +1,322 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Runs a manifest of experiments in one JVM. Each line of the manifest holds the same arguments MLSystemManager takes,
+// for example "-L neuralnet -A datasets/iris.arff -E cross 10 -N -P hiddenNodes=8". Every dataset is loaded once,
+// the row order for each (dataset, seed) is computed once so all learners see identical splits, and the folds of
+// every job are spread over a thread pool. All fold results go to one CSV file.
+//
+// java ExperimentBatch [manifestFile] [resultsFile] {[numThreads]}
+public class ExperimentBatch {
+
+  long defaultSeed = 1234; // Used for jobs without -S, so that every learner sees the same splits
+  int numThreads = Runtime.getRuntime().availableProcessors();
+
+  MLSystemManager manager = new MLSystemManager();
+  Map<String, Matrix> datasets = new HashMap<String, Matrix>();
+  Map<String, int[]> rowOrders = new HashMap<String, int[]>();
+  Map<String, ResultsCache> resultsCaches = new HashMap<String, ResultsCache>();
+
+  class Job {
+    String line;
+    String fileName;
+    String learnerName;
+    String evalMethod;
+    String evalParameter;
+    boolean normalize;
+    long seed;
+    Map<String, String> learnerParameters;
+    Matrix data;
+    Matrix testData; // Only for static evaluation
+    int[] rowOrder;
+    ResultsCache cache; // When the job was given -C
+    String dataHash;
+  }
+
+  class FoldResult {
+    Job job;
+    int fold;
+    double trainSeconds;
+    double trainAccuracy;
+    double testAccuracy;
+  }
+
+  // The dataset is shared read-only by every job, so normalized and raw versions are kept apart
+  private Matrix getDataset(String fileName, boolean normalize) throws Exception {
+    String key = fileName + (normalize ? " (normalized)" : "");
+    Matrix data = datasets.get(key);
+    if (data == null) {
+      data = manager.loadData(fileName);
+      if (normalize) {
+        data.normalize();
+      }
+      datasets.put(key, data);
+    }
+    return data;
+  }
+
+  // A shuffled row order, shared by every job on the same dataset with the same seed
+  private int[] getRowOrder(String fileName, int rows, long seed) {
+    String key = fileName + "#" + seed;
+    int[] order = rowOrders.get(key);
+    if (order == null) {
+      order = new int[rows];
+      for (int i = 0; i < rows; ++i) {
+        order[i] = i;
+      }
+      Random rand = new Random(seed);
+      for (int n = rows; n > 0; n--) {
+        int i = rand.nextInt(n);
+        int tmp = order[n - 1];
+        order[n - 1] = order[i];
+        order[i] = tmp;
+      }
+      rowOrders.put(key, order);
+    }
+    return order;
+  }
+
+  private Job parseJob(String line) throws Exception {
+    MLSystemManager.ArgParser parser = manager.new ArgParser(line.trim().split("\\s+"));
+    Job job = new Job();
+    job.line = line.trim();
+    job.fileName = parser.getARFF();
+    job.learnerName = parser.getLearner();
+    job.evalMethod = parser.getEvaluation();
+    job.evalParameter = parser.getEvalParameter();
+    job.normalize = parser.getNormalize();
+    job.seed = parser.getSeed() != null ? parser.getSeed() : defaultSeed;
+    job.learnerParameters = parser.getLearnerParameters();
+    job.data = getDataset(job.fileName, job.normalize);
+    job.rowOrder = getRowOrder(job.fileName, job.data.rows(), job.seed);
+    if (parser.getCacheDirectory() != null) {
+      String directory = manager.resolve(parser.getCacheDirectory());
+      job.cache = resultsCaches.get(directory);
+      if (job.cache == null) {
+        job.cache = new ResultsCache(directory);
+        resultsCaches.put(directory, job.cache);
+      }
+      job.dataHash = ResultsCache.hashFile(manager.resolve(job.fileName));
+    }
+    if (job.evalMethod.equals("static")) {
+      job.testData = getDataset(job.evalParameter, job.normalize);
+    } else if (job.evalMethod.equals("halving")) {
+      throw new Exception("Successive halving is not supported in a batch: " + line);
+    } else if (job.evalMethod.equals("curve")) {
+      throw new Exception("Learning curves are not supported in a batch: " + line);
+    } else if (job.evalMethod.equals("adaptive")) {
+      throw new Exception("Adaptive cross-validation is not supported in a batch: " + line);
+    }
+    return job;
+  }
+
+  private int numFolds(Job job) {
+    return job.evalMethod.equals("cross") ? Integer.parseInt(job.evalParameter) : 1;
+  }
+
+  private int[] slice(int[] order, int begin, int end) {
+    int[] rows = new int[end - begin];
+    System.arraycopy(order, begin, rows, 0, end - begin);
+    return rows;
+  }
+
+  // Everything in the order except the rows from begin to end
+  private int[] sliceOutside(int[] order, int begin, int end) {
+    int[] rows = new int[order.length - (end - begin)];
+    System.arraycopy(order, 0, rows, 0, begin);
+    System.arraycopy(order, end, rows, begin, order.length - end);
+    return rows;
+  }
+
+  private int[] allRows(int numRows) {
+    int[] rows = new int[numRows];
+    for (int i = 0; i < numRows; ++i) {
+      rows[i] = i;
+    }
+    return rows;
+  }
+
+  // Folds are fully determined by the job and the fold number (the learner is seeded with seed + fold),
+  // so a cached result stands in for running the fold
+  private FoldResult runFold(Job job, int fold) throws Exception {
+    if (job.cache == null) {
+      return computeFold(job, fold);
+    }
+
+    String split = "batch " + job.evalMethod + " " + (job.evalParameter == null ? "" : job.evalParameter) + " fold " + fold
+        + (job.normalize ? " normalize" : "");
+    if (job.evalMethod.equals("static")) {
+      split += " test " + ResultsCache.hashFile(manager.resolve(job.evalParameter));
+    }
+    String key = ResultsCache.key(job.dataHash, job.learnerName, job.learnerParameters, job.seed, split);
+    double[] cached = job.cache.get(key);
+    if (cached != null) {
+      FoldResult result = new FoldResult();
+      result.job = job;
+      result.fold = fold;
+      result.trainSeconds = cached[0];
+      result.trainAccuracy = cached[1];
+      result.testAccuracy = cached[2];
+      return result;
+    }
+
+    FoldResult result = computeFold(job, fold);
+    job.cache.put(key, new double[]{result.trainSeconds, result.trainAccuracy, result.testAccuracy});
+    return result;
+  }
+
+  // Each fold copies its own rows, since the learners shuffle their training matrices in place
+  private FoldResult computeFold(Job job, int fold) throws Exception {
+    TrainingEvents.Fold foldEvent = new TrainingEvents.Fold();
+    foldEvent.begin();
+    Matrix data = job.data;
+    int labelColumn = data.cols() - 1;
+    int[] trainRows;
+    int[] testRows;
+    Matrix testSource = data;
+
+    if (job.evalMethod.equals("training")) {
+      trainRows = job.rowOrder;
+      testRows = job.rowOrder;
+    } else if (job.evalMethod.equals("static")) {
+      trainRows = job.rowOrder;
+      testRows = allRows(job.testData.rows());
+      testSource = job.testData;
+    } else if (job.evalMethod.equals("random")) {
+      int trainSize = (int) (Double.parseDouble(job.evalParameter) * data.rows());
+      trainRows = slice(job.rowOrder, 0, trainSize);
+      testRows = slice(job.rowOrder, trainSize, data.rows());
+    } else if (job.evalMethod.equals("cross")) {
+      int folds = numFolds(job);
+      int begin = fold * data.rows() / folds;
+      int end = (fold + 1) * data.rows() / folds;
+      trainRows = sliceOutside(job.rowOrder, begin, end);
+      testRows = slice(job.rowOrder, begin, end);
+    } else {
+      throw new Exception("Unsupported evaluation method in a batch: " + job.evalMethod);
+    }
+
+    Matrix trainFeatures = new Matrix(data, trainRows, 0, labelColumn);
+    Matrix trainLabels = new Matrix(data, trainRows, labelColumn, 1);
+    Matrix testFeatures = new Matrix(testSource, testRows, 0, testSource.cols() - 1);
+    Matrix testLabels = new Matrix(testSource, testRows, testSource.cols() - 1, 1);
+
+    SupervisedLearner learner = manager.getLearner(job.learnerName, new Random(job.seed + fold));
+    manager.setParameters(learner, job.learnerParameters);
+    if (job.evalMethod.equals("random") && job.learnerName.equals("neuralnet")) {
+      // Same stopping criteria data as MLSystemManager's random evaluation
+      learner.setValidationSet(new Matrix(data, job.rowOrder, 0, labelColumn), new Matrix(data, job.rowOrder, labelColumn, 1));
+    }
+
+    FoldResult result = new FoldResult();
+    result.job = job;
+    result.fold = fold;
+    long startTime = System.nanoTime();
+    learner.train(trainFeatures, trainLabels);
+    result.trainSeconds = (System.nanoTime() - startTime) / 1e9;
+    result.trainAccuracy = learner.measureAccuracy(trainFeatures, trainLabels, null);
+    result.testAccuracy = learner.measureAccuracy(testFeatures, testLabels, null);
+    MLSystemManager.commitFoldEvent(foldEvent, job.learnerName, fold, trainFeatures.rows(), testFeatures.rows(), result.testAccuracy);
+    return result;
+  }
+
+  private String formatParameters(Map<String, String> parameters) {
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+      if (builder.length() > 0) {
+        builder.append(';');
+      }
+      builder.append(parameter.getKey()).append('=').append(parameter.getValue());
+    }
+    return builder.toString();
+  }
+
+  public void run(String manifestFile, String resultsFile) throws Exception {
+    manager.exitOnUsageError = false;
+
+    List<Job> jobs = new ArrayList<Job>();
+    BufferedReader reader = new BufferedReader(new FileReader(manifestFile));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String trimmed = line.trim();
+      if (trimmed.length() > 0 && trimmed.charAt(0) != '%' && trimmed.charAt(0) != '#') {
+        jobs.add(parseJob(trimmed));
+      }
+    }
+    reader.close();
+
+    System.out.println("Jobs: " + jobs.size() + ", datasets loaded: " + datasets.size() + ", threads: " + numThreads);
+
+    // The learners print their progress, which would interleave unreadably across threads
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) {}
+    }));
+
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    List<Future<FoldResult>> futures = new ArrayList<Future<FoldResult>>();
+    for (final Job job : jobs) {
+      for (int i = 0; i < numFolds(job); ++i) {
+        final int fold = i;
+        futures.add(pool.submit(() -> runFold(job, fold)));
+      }
+    }
+
+    PrintWriter writer = new PrintWriter(resultsFile);
+    writer.println("dataset,learner,evaluation,evalParameter,normalize,parameters,seed,fold,trainSeconds,trainAccuracy,testAccuracy");
+    try {
+      Job currentJob = null;
+      double sumAccuracy = 0;
+      for (Future<FoldResult> future : futures) {
+        FoldResult result = future.get();
+        Job job = result.job;
+        writer.println(job.fileName + "," + job.learnerName + "," + job.evalMethod + "," + (job.evalParameter == null ? "" : job.evalParameter)
+            + "," + job.normalize + "," + formatParameters(job.learnerParameters)
+            + "," + job.seed + "," + result.fold + "," + result.trainSeconds + "," + result.trainAccuracy + "," + result.testAccuracy);
+
+        if (job != currentJob) {
+          currentJob = job;
+          sumAccuracy = 0;
+        }
+        sumAccuracy += result.testAccuracy;
+        if (result.fold == numFolds(job) - 1) {
+          console.println(job.line + " -> mean test accuracy " + (sumAccuracy / numFolds(job)));
+        }
+      }
+    } finally {
+      // A failed fold leaves others running, which must not print to the console once it is back. The learners
+      // do not check for interrupts, so this waits for the folds already started; queued ones are dropped.
+      pool.shutdownNow();
+      while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+      }
+      System.setOut(console);
+      writer.close();
+    }
+
+    System.out.println("Results written to " + resultsFile);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage: ExperimentBatch [manifestFile] [resultsFile] {[numThreads]}");
+      return;
+    }
+    ExperimentBatch batch = new ExperimentBatch();
+    if (args.length > 2) {
+      batch.numThreads = Integer.parseInt(args[2]);
+    }
+    batch.run(args[0], args[1]);
+  }
+}
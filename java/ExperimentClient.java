@@ -0,0 +1,43 @@
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+// Thin client for ExperimentDaemon. Takes exactly the arguments of MLSystemManager and prints the results as they stream back.
+//
+// java ExperimentClient [-port port] -L [learningAlgorithm] -A [ARFF_File] -E [evaluationMethod] ...
+// java ExperimentClient [-port port] -stop
+public class ExperimentClient {
+
+  public static void main(String[] args) throws Exception {
+    int port = ExperimentDaemon.defaultPort;
+    int firstArg = 0;
+
+    if (args.length > 1 && args[0].equals("-port")) {
+      port = Integer.parseInt(args[1]);
+      firstArg = 2;
+    }
+
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    // Relative dataset paths are resolved by the daemon against the client's directory
+    output.writeUTF(System.getProperty("user.dir"));
+    output.writeInt(args.length - firstArg);
+    for (int i = firstArg; i < args.length; ++i) {
+      output.writeUTF(args[i]);
+    }
+    output.flush();
+
+    InputStream input = socket.getInputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      System.out.write(buffer, 0, read);
+      System.out.flush();
+    }
+
+    socket.close();
+  }
+}
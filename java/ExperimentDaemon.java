@@ -0,0 +1,121 @@
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps one warm JVM (JIT compiled learners and a cache of loaded datasets) for running many experiments.
+// ExperimentClient sends it the same arguments MLSystemManager takes and receives the printed output.
+//
+// java ExperimentDaemon [port] [cacheMegabytes]
+public class ExperimentDaemon {
+
+  static int defaultPort = 4780;
+
+  int port;
+  DatasetCache datasetCache = new DatasetCache(Runtime.getRuntime().maxMemory() / 4);
+  boolean running = true;
+
+  // Loaded datasets, least recently used first. Once their estimated size (see MemoryFootprint) is over
+  // maxBytes the least recently used are let go, always keeping the newest, so a daemon fed many datasets does
+  // not run out of memory.
+  static class DatasetCache extends LinkedHashMap<String, Matrix> {
+    private static final long serialVersionUID = 1L;
+
+    long maxBytes;
+
+    DatasetCache(long maxBytes) {
+      super(16, 0.75f, true);
+      this.maxBytes = maxBytes;
+    }
+
+    protected boolean removeEldestEntry(Map.Entry<String, Matrix> eldest) {
+      long bytes = 0;
+      for (Matrix data : values()) {
+        bytes += MemoryFootprint.matrixBytes(data);
+      }
+      Iterator<Matrix> iterator = values().iterator();
+      while (bytes > maxBytes && size() > 1) {
+        bytes -= MemoryFootprint.matrixBytes(iterator.next());
+        iterator.remove();
+      }
+      return false;
+    }
+  }
+
+  public ExperimentDaemon(int port) {
+    this.port = port;
+  }
+
+  public void serve() throws Exception {
+    // Only local clients may connect, the daemon runs arbitrary experiments on request
+    ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    System.out.println("Experiment daemon listening on port " + port);
+
+    while (running) {
+      Socket socket = serverSocket.accept();
+      try {
+        handle(socket);
+      } catch (Exception e) {
+        System.out.println("Request failed: " + e);
+      } finally {
+        socket.close();
+      }
+    }
+
+    serverSocket.close();
+    System.out.println("Experiment daemon stopped");
+  }
+
+  // Request: working directory, argument count, then each argument (all as UTF strings).
+  // Response: everything the experiment prints, until the socket is closed.
+  private void handle(Socket socket) throws Exception {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    String workingDirectory = input.readUTF();
+    String[] args = new String[input.readInt()];
+    for (int i = 0; i < args.length; ++i) {
+      args[i] = input.readUTF();
+    }
+
+    PrintStream client = new PrintStream(socket.getOutputStream(), true);
+
+    if (args.length == 1 && args[0].equals("-stop")) {
+      running = false;
+      client.println("Experiment daemon stopping");
+      return;
+    }
+
+    // Requests are handled one at a time, so the experiment's output can be sent to the client through System.out
+    PrintStream console = System.out;
+    System.setOut(client);
+    try {
+      MLSystemManager manager = new MLSystemManager();
+      manager.exitOnUsageError = false;
+      manager.workingDirectory = workingDirectory;
+      manager.datasetCache = datasetCache;
+      manager.run(args);
+    } catch (MLSystemManager.UsageException e) {
+      // The usage message has already been printed to the client
+    } catch (Exception e) {
+      client.println("Experiment failed: " + e);
+    } finally {
+      System.setOut(console);
+      client.flush();
+    }
+
+    console.println("Finished: " + String.join(" ", args) + " (" + datasetCache.size() + " datasets cached)");
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : defaultPort;
+    ExperimentDaemon daemon = new ExperimentDaemon(port);
+    if (args.length > 1) {
+      daemon.datasetCache.maxBytes = (long) (Double.parseDouble(args[1]) * 1024 * 1024);
+    }
+    daemon.serve();
+  }
+}
@@ -1,4 +1,6 @@
 import java.util.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import javafx.util.Pair;
 
 class InstanceBasedLearner extends SupervisedLearner {
@@ -38,6 +40,112 @@ class InstanceBasedLearner extends SupervisedLearner {
 
   }
 
+  public boolean supportsPartialFit() {
+    return true;
+  }
+
+  public boolean trainsInOnePass() {
+    return true;
+  }
+
+  // Starts with no stored instances
+  public void initialize(Matrix featureSchema, Matrix labelSchema) throws Exception {
+    numFeatures = featureSchema.cols();
+    numOutputClasses = labelSchema.valueCount(0);
+    numTrainingRows = 0;
+
+    trainingFeatures = new Matrix(featureSchema, 0, 0, 0, numFeatures);
+    trainingLabels = new Matrix(labelSchema, 0, 0, 0, 1);
+
+    isContinuous = new boolean[numFeatures];
+
+    for (int i = 0; i < numFeatures; ++i) {
+      isContinuous[i] = featureSchema.valueCount(i) < 2;
+    }
+  }
+
+  // Stores every row of the batch (trainingSetPercentage only applies to train, which sees the whole set at once)
+  public void partialFit(Matrix features, Matrix labels) throws Exception {
+    if (trainingFeatures == null) {
+      throw new Exception("initialize must be called before partialFit");
+    }
+
+    trainingFeatures.add(features, 0, 0, features.rows());
+    trainingLabels.add(labels, 0, 0, labels.rows());
+    numTrainingRows += features.rows();
+  }
+
+  // The stored copy of the training set is the whole model
+  public long estimateModelBytes() {
+    return MemoryFootprint.matrixBytes(trainingFeatures) + MemoryFootprint.matrixBytes(trainingLabels);
+  }
+
+  public void writeModel(DataOutputStream out) throws Exception {
+    out.writeInt(k);
+    out.writeBoolean(distanceWeighting);
+    out.writeInt(numOutputClasses);
+    out.writeInt(numTrainingRows);
+    out.writeInt(numFeatures);
+    for (int i = 0; i < numFeatures; ++i) {
+      out.writeBoolean(isContinuous[i]);
+    }
+    for (int i = 0; i < numTrainingRows; ++i) {
+      double[] row = trainingFeatures.row(i);
+      for (int j = 0; j < numFeatures; ++j) {
+        out.writeDouble(row[j]);
+      }
+      out.writeDouble(trainingLabels.get(i, 0));
+    }
+  }
+
+  public void readModel(DataInputStream in) throws Exception {
+    k = in.readInt();
+    distanceWeighting = in.readBoolean();
+    numOutputClasses = in.readInt();
+    numTrainingRows = in.readInt();
+    numFeatures = in.readInt();
+    isContinuous = new boolean[numFeatures];
+    for (int i = 0; i < numFeatures; ++i) {
+      isContinuous[i] = in.readBoolean();
+    }
+    trainingFeatures = new Matrix();
+    trainingFeatures.setSize(numTrainingRows, numFeatures);
+    trainingLabels = new Matrix();
+    trainingLabels.setSize(numTrainingRows, 1);
+    for (int i = 0; i < numTrainingRows; ++i) {
+      double[] row = trainingFeatures.row(i);
+      for (int j = 0; j < numFeatures; ++j) {
+        row[j] = in.readDouble();
+      }
+      trainingLabels.set(i, 0, in.readDouble());
+    }
+  }
+
+  // Each evaluation is recorded as one batch of queries
+  public double measureAccuracy(Matrix features, Matrix labels, Matrix confusion) throws Exception {
+    TrainingEvents.KnnQueryBatch queryEvent = new TrainingEvents.KnnQueryBatch();
+    queryEvent.begin();
+    double accuracy = super.measureAccuracy(features, labels, confusion);
+    commitQueryEvent(queryEvent, features.rows());
+    return accuracy;
+  }
+
+  public void predictBatch(double[][] features, double[][] labels) throws Exception {
+    TrainingEvents.KnnQueryBatch queryEvent = new TrainingEvents.KnnQueryBatch();
+    queryEvent.begin();
+    super.predictBatch(features, labels);
+    commitQueryEvent(queryEvent, features.length);
+  }
+
+  private void commitQueryEvent(TrainingEvents.KnnQueryBatch queryEvent, int queries) {
+    if (queryEvent.shouldCommit()) {
+      queryEvent.queries = queries;
+      queryEvent.storedInstances = numTrainingRows;
+      queryEvent.k = k;
+      queryEvent.commit();
+    }
+  }
+
   private double getDistance(double[] features, double[] trainingInstance) {
     
     double distance = 0.0;
@@ -84,8 +192,10 @@ class InstanceBasedLearner extends SupervisedLearner {
 
     PriorityQueue<Pair<Integer, Double>> indexesOfClosest = new PriorityQueue(k, new ClosestComparator());
 
+    // Off-heap training rows are copied into one scratch row per query rather than a new array per row
+    double[] scratch = new double[numFeatures];
     for (int i = 0; i < numTrainingRows; ++i) {
-      double[] currentRow = trainingFeatures.row(i);
+      double[] currentRow = trainingFeatures.row(i, scratch);
       double distanceToInstance = getDistance(features, currentRow);
       if (indexesOfClosest.size() < k) {
         indexesOfClosest.add(new Pair(i, distanceToInstance));
@@ -112,7 +222,7 @@ class InstanceBasedLearner extends SupervisedLearner {
       double currentDistance = pair.getValue();
 
       double[] currentRow = trainingFeatures.row(currentIndex);
-      double currentOutput = trainingLabels.row(currentIndex)[0];
+      double currentOutput = trainingLabels.get(currentIndex, 0);
 
       if (currentDistance == 0) {
         labels[0] = currentOutput;
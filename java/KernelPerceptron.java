@@ -0,0 +1,238 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One-vs-rest perceptrons in dual form. Instead of a weight per (possibly quadratic) feature, each class keeps a
+// coefficient per support example, the training rows it made a mistake on, and its net is
+//   sum over supports s of alpha[class][s] * K(support s, x) + bias[class]
+// Memory grows with the number of mistakes instead of with the square of the number of features.
+//
+// Kernels: poly, (x.y + 1)^degree, and rbf, exp(-gamma * |x - y|^2).
+public class KernelPerceptron {
+
+  String kernel;
+  int degree;
+  double gamma;
+  double learningRate;
+  int numClasses;
+
+  ArrayList<double[]> supports = new ArrayList<double[]>();
+  double[][] alphas; // [class][support], with spare capacity
+  double[] bias;
+
+  // Only while training
+  Matrix features;
+  int[] supportOfRow; // Support index of each training row, or -1
+  GramCache gramCache;
+
+  // Kernel values between training rows and the supports, for the most recently used rows. A cached row holds
+  // one value per support that existed when it was last used, and is extended as supports are added.
+  class GramCache extends LinkedHashMap<Integer, double[]> {
+    private static final long serialVersionUID = 1L;
+
+    int maxRows;
+
+    GramCache(int maxRows) {
+      super(16, 0.75f, true);
+      this.maxRows = maxRows;
+    }
+
+    protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+      return size() > maxRows;
+    }
+
+    double[] kernelRow(int row) {
+      double[] values = get(row);
+      int numSupports = supports.size();
+      if (values == null || values.length < numSupports) {
+        int start = values == null ? 0 : values.length;
+        double[] extended = new double[numSupports];
+        if (values != null) {
+          System.arraycopy(values, 0, extended, 0, start);
+        }
+        double[] x = features.row(row);
+        for (int s = start; s < numSupports; ++s) {
+          extended[s] = evaluate(supports.get(s), x);
+        }
+        values = extended;
+        put(row, values);
+      }
+      return values;
+    }
+  }
+
+  public KernelPerceptron(String kernel, int degree, double gamma, double learningRate, int numClasses) throws Exception {
+    if (!kernel.equals("poly") && !kernel.equals("rbf")) {
+      throw new Exception("Unrecognized kernel: " + kernel);
+    }
+    this.kernel = kernel;
+    this.degree = degree;
+    this.gamma = gamma;
+    this.learningRate = learningRate;
+    this.numClasses = numClasses;
+    this.alphas = new double[numClasses][16];
+    this.bias = new double[numClasses];
+  }
+
+  double evaluate(double[] a, double[] b) {
+    if (kernel.equals("poly")) {
+      double dot = 0.0;
+      for (int i = 0; i < a.length; ++i) {
+        dot += a[i] * b[i];
+      }
+      return Math.pow(dot + 1.0, degree);
+    }
+    double distance = 0.0;
+    for (int i = 0; i < a.length; ++i) {
+      double difference = a[i] - b[i];
+      distance += difference * difference;
+    }
+    return Math.exp(-gamma * distance);
+  }
+
+  public void beginTraining(Matrix features, int gramCacheRows) {
+    this.features = features;
+    this.supportOfRow = new int[features.rows()];
+    java.util.Arrays.fill(supportOfRow, -1);
+    this.gramCache = new GramCache(gramCacheRows);
+  }
+
+  // Lets go of the training set and the cache, keeping only the supports
+  public void endTraining() {
+    features = null;
+    supportOfRow = null;
+    gramCache = null;
+  }
+
+  private int addSupport(int row) {
+    int s = supports.size();
+    supports.add(features.row(row).clone());
+    if (s == alphas[0].length) {
+      for (int c = 0; c < numClasses; ++c) {
+        alphas[c] = java.util.Arrays.copyOf(alphas[c], s * 2);
+      }
+    }
+    supportOfRow[row] = s;
+    return s;
+  }
+
+  private double net(int c, double[] kernelValues) {
+    double net = bias[c];
+    double[] alpha = alphas[c];
+    for (int s = 0; s < kernelValues.length; ++s) {
+      net += alpha[s] * kernelValues[s];
+    }
+    return net;
+  }
+
+  // The perceptron rule for every class on one training row: on a mistake the row's coefficient moves
+  // by learningRate * (target - output), which is the dual of adding that multiple of the row to the weights.
+  // Returns the class with the highest net before the updates.
+  public int trainRow(int row, double targetClass) {
+    double[] kernelValues = gramCache.kernelRow(row);
+    int best = 0;
+    double bestNet = 0.0;
+    for (int c = 0; c < numClasses; ++c) {
+      double target = targetClass == c ? 1.0 : 0.0;
+      double net = net(c, kernelValues);
+      if (c == 0 || net > bestNet) {
+        bestNet = net;
+        best = c;
+      }
+      double output = net > 0 ? 1.0 : 0.0;
+      if (target != output) {
+        int s = supportOfRow[row];
+        if (s < 0) {
+          s = addSupport(row);
+          kernelValues = gramCache.kernelRow(row);
+        }
+        double change = learningRate * (target - output);
+        alphas[c][s] += change;
+        bias[c] += change;
+      }
+    }
+    return best;
+  }
+
+  private int argmax(double[] kernelValues) {
+    int best = 0;
+    double bestNet = net(0, kernelValues);
+    for (int c = 1; c < numClasses; ++c) {
+      double currentNet = net(c, kernelValues);
+      if (currentNet > bestNet) {
+        bestNet = currentNet;
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  // Class with the highest net, for a training row (through the Gram cache)
+  public int classifyRow(int row) {
+    return argmax(gramCache.kernelRow(row));
+  }
+
+  // Class with the highest net, for a new input. Each kernel value is computed once and shared by the classes.
+  public int classify(double[] x) {
+    double[] kernelValues = new double[supports.size()];
+    for (int s = 0; s < kernelValues.length; ++s) {
+      kernelValues[s] = evaluate(supports.get(s), x);
+    }
+    return argmax(kernelValues);
+  }
+
+  public int numSupports() {
+    return supports.size();
+  }
+
+  public void write(DataOutputStream out) throws Exception {
+    out.writeUTF(kernel);
+    out.writeInt(degree);
+    out.writeDouble(gamma);
+    out.writeDouble(learningRate);
+    out.writeInt(numClasses);
+    int numSupports = supports.size();
+    int numInputs = numSupports > 0 ? supports.get(0).length : 0;
+    out.writeInt(numSupports);
+    out.writeInt(numInputs);
+    for (double[] support : supports) {
+      for (int i = 0; i < numInputs; ++i) {
+        out.writeDouble(support[i]);
+      }
+    }
+    for (int c = 0; c < numClasses; ++c) {
+      out.writeDouble(bias[c]);
+      for (int s = 0; s < numSupports; ++s) {
+        out.writeDouble(alphas[c][s]);
+      }
+    }
+  }
+
+  public static KernelPerceptron read(DataInputStream in) throws Exception {
+    String kernel = in.readUTF();
+    int degree = in.readInt();
+    double gamma = in.readDouble();
+    double learningRate = in.readDouble();
+    int numClasses = in.readInt();
+    KernelPerceptron model = new KernelPerceptron(kernel, degree, gamma, learningRate, numClasses);
+    int numSupports = in.readInt();
+    int numInputs = in.readInt();
+    for (int s = 0; s < numSupports; ++s) {
+      double[] support = new double[numInputs];
+      for (int i = 0; i < numInputs; ++i) {
+        support[i] = in.readDouble();
+      }
+      model.supports.add(support);
+    }
+    model.alphas = new double[numClasses][Math.max(numSupports, 16)];
+    for (int c = 0; c < numClasses; ++c) {
+      model.bias[c] = in.readDouble();
+      for (int s = 0; s < numSupports; ++s) {
+        model.alphas[c][s] = in.readDouble();
+      }
+    }
+    return model;
+  }
+}
@@ -0,0 +1,409 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Micro benchmarks for the data layer and every learner in MLSystemManager.getLearner.
+// Each benchmark is warmed up before it is measured, so the numbers describe JIT compiled code.
+//
+// java LearnerBenchmark [-D datasetDir] [-S dataset,dataset] [-X scaleFactor] [-W warmups] [-I iterations] [-alloc] [-save file] [-compare file]
+//                        [-hogwild threads,threads] [-multiclass]
+//
+// -hogwild measures only Hogwild perceptron training, for each thread count against the sequential path.
+// -multiclass measures only the multiclass perceptron against one-vs-rest (e.g. with -S vowel,cars).
+//
+// Baselines are absolute timings, which only mean something on the machine they were taken on, so none is kept in
+// the repository: save one with -save before making a change, then run with -compare on the same machine. A
+// comparison exits with status 1 if something the baseline measured fails to run now.
+public class LearnerBenchmark {
+
+  String[] datasetNames = new String[]{"iris", "vowel", "cars", "magicTelescope"};
+  String datasetDirectory = "datasets";
+  int scaleFactor = 10; // Synthetic datasets repeat every row this many times (with noise on continuous columns)
+  int warmupIterations = 2;
+  int measureIterations = 5;
+  int maxPredictRows = 500; // Rows used to measure per-row predict latency
+  boolean profileAllocations = false;
+  String saveFile;
+  String compareFile;
+  int[] hogwildThreadCounts;
+  boolean compareMulticlass = false;
+
+  Random rand = new Random(1234);
+  PrintStream out = System.out;
+  Map<String, Result> results = new LinkedHashMap<String, Result>();
+  Map<String, String> failures = new LinkedHashMap<String, String>(); // Benchmark name to the exception's message
+
+  interface Task {
+    void run() throws Exception;
+  }
+
+  class Result {
+    String name;
+    double mean;
+    double stdDev;
+    String unit;
+    double allocatedBytes; // Per operation, -1 if not profiled
+
+    public Result(String name, double mean, double stdDev, String unit, double allocatedBytes) {
+      this.name = name;
+      this.mean = mean;
+      this.stdDev = stdDev;
+      this.unit = unit;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+
+  // Runs the task, and records the time of each measured iteration divided by the number of operations it performs
+  private void measure(String name, String unit, double operationsPerRun, double unitNanos, Task task) {
+    double[] samples = new double[measureIterations];
+    double allocated = 0;
+    PrintStream original = System.out;
+
+    try {
+      // The learners print their progress, which is not part of what is being measured
+      System.setOut(new PrintStream(new OutputStream() {
+        public void write(int b) {}
+      }));
+
+      for (int i = 0; i < warmupIterations; ++i) {
+        task.run();
+      }
+
+      for (int i = 0; i < measureIterations; ++i) {
+        long startBytes = profileAllocations ? PhaseTimer.allocatedBytes() : 0;
+        long startTime = System.nanoTime();
+        task.run();
+        long elapsed = System.nanoTime() - startTime;
+        if (profileAllocations) {
+          allocated += PhaseTimer.allocatedBytes() - startBytes;
+        }
+        samples[i] = elapsed / unitNanos / operationsPerRun;
+      }
+    } catch (Exception e) {
+      System.setOut(original);
+      out.printf("%-50s %s%n", name, "n/a (" + e.getMessage() + ")");
+      failures.put(name, String.valueOf(e.getMessage()));
+      return;
+    } finally {
+      System.setOut(original);
+    }
+
+    double mean = 0;
+    for (double sample : samples) {
+      mean += sample;
+    }
+    mean /= samples.length;
+
+    double variance = 0;
+    for (double sample : samples) {
+      variance += (sample - mean) * (sample - mean);
+    }
+    double stdDev = Math.sqrt(variance / samples.length);
+    double allocatedPerOp = profileAllocations ? allocated / measureIterations / operationsPerRun : -1;
+
+    Result result = new Result(name, mean, stdDev, unit, allocatedPerOp);
+    results.put(name, result);
+    printResult(result);
+  }
+
+  private void printResult(Result result) {
+    if (result.allocatedBytes >= 0) {
+      out.printf("%-50s %14.3f +- %-10.3f %-8s %14.0f B/op%n", result.name, result.mean, result.stdDev, result.unit, result.allocatedBytes);
+    } else {
+      out.printf("%-50s %14.3f +- %-10.3f %-8s%n", result.name, result.mean, result.stdDev, result.unit);
+    }
+  }
+
+  // A larger copy of the dataset, each row repeated scaleFactor times with noise on the continuous columns
+  private Matrix scaleUp(Matrix data) {
+    Matrix scaled = new Matrix(data, 0, 0, data.rows(), data.cols());
+    for (int copy = 1; copy < scaleFactor; ++copy) {
+      for (int i = 0; i < data.rows(); ++i) {
+        double[] row = data.row(i).clone();
+        for (int j = 0; j < row.length; ++j) {
+          if (data.valueCount(j) == 0 && row[j] != Matrix.MISSING) {
+            row[j] += rand.nextGaussian() * 0.01 * (Math.abs(row[j]) + 1);
+          }
+        }
+        scaled.m_data.add(row);
+      }
+    }
+    return scaled;
+  }
+
+  private void benchmarkDataset(String datasetName, final String fileName, final Matrix data) throws Exception {
+
+    if (fileName != null) {
+      final int rows = data.rows();
+      measure(datasetName + " loadArff", "us/row", rows, 1000.0, () -> {
+        Matrix loaded = new Matrix();
+        loaded.loadArff(fileName);
+      });
+    }
+
+    measure(datasetName + " copy", "ns/row", data.rows(), 1.0, () -> {
+      new Matrix(data, 0, 0, data.rows(), data.cols());
+    });
+
+    measure(datasetName + " shuffle", "ns/row", data.rows(), 1.0, () -> {
+      data.shuffle(rand);
+    });
+
+    final Matrix features = new Matrix(data, 0, 0, data.rows(), data.cols() - 1);
+    final Matrix labels = new Matrix(data, 0, data.cols() - 1, data.rows(), 1);
+    final int predictRows = Math.min(maxPredictRows, features.rows());
+    MLSystemManager manager = new MLSystemManager();
+
+    for (String learnerName : MLSystemManager.learnerNames) {
+      final SupervisedLearner learner = manager.getLearner(learnerName, rand);
+      if (learner instanceof NeuralNet) {
+        // Keeps the neural net from running for its full time budget on every iteration
+        learner.setParameter("maxRuntimeSeconds", "2");
+      }
+
+      measure(datasetName + " " + learnerName + " train", "ms/op", 1, 1000000.0, () -> {
+        learner.train(features, labels);
+      });
+
+      if (!results.containsKey(datasetName + " " + learnerName + " train")) {
+        continue; // The learner does not support this dataset
+      }
+
+      final double[] prediction = new double[1];
+      measure(datasetName + " " + learnerName + " predict", "us/row", predictRows, 1000.0, () -> {
+        for (int i = 0; i < predictRows; ++i) {
+          learner.predict(features.row(i), prediction);
+        }
+      });
+    }
+  }
+
+  // Perceptron training time and held out accuracy for each Hogwild thread count, next to the sequential path.
+  // Every run uses the same seed and split, so the accuracy difference is what the lock-free updates cost.
+  private void benchmarkHogwild(String datasetName, Matrix data) throws Exception {
+    Matrix[] split = holdoutSplit(data);
+    final Matrix trainFeatures = split[0];
+    final Matrix trainLabels = split[1];
+    Matrix testFeatures = split[2];
+    Matrix testLabels = split[3];
+
+    int[] threadCounts = new int[hogwildThreadCounts.length + 1];
+    threadCounts[0] = 1;
+    System.arraycopy(hogwildThreadCounts, 0, threadCounts, 1, hogwildThreadCounts.length);
+    double[] accuracies = new double[threadCounts.length];
+    String[] names = new String[threadCounts.length];
+
+    PrintStream original = System.out;
+    for (int t = 0; t < threadCounts.length; ++t) {
+      final int threads = threadCounts[t];
+      names[t] = datasetName + " perceptron " + (t == 0 ? "sequential" : "hogwild " + threads + " threads") + " train";
+      measure(names[t], "ms/op", 1, 1000000.0, () -> {
+        hogwildLearner(threads).train(trainFeatures, trainLabels);
+      });
+
+      try {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        PerceptronLearner learner = hogwildLearner(threads);
+        learner.train(trainFeatures, trainLabels);
+        accuracies[t] = learner.measureAccuracy(testFeatures, testLabels, null);
+      } finally {
+        System.setOut(original);
+      }
+    }
+
+    Result sequential = results.get(names[0]);
+    out.printf("%-10s %12s %10s %12s %12s%n", "Threads", "Train (ms)", "Speedup", "Accuracy", "Difference");
+    for (int t = 0; t < threadCounts.length; ++t) {
+      Result result = results.get(names[t]);
+      if (result == null || sequential == null) {
+        continue;
+      }
+      out.printf("%-10s %12.1f %10.2f %12.4f %12.4f%n", t == 0 ? "sequential" : threadCounts[t], result.mean,
+          sequential.mean / result.mean, accuracies[t], accuracies[t] - accuracies[0]);
+    }
+  }
+
+  private PerceptronLearner hogwildLearner(int threads) throws Exception {
+    PerceptronLearner learner = new PerceptronLearner(new Random(1234));
+    learner.setParameter("hogwildThreads", Integer.toString(threads));
+    return learner;
+  }
+
+  // Training features, training labels, test features and test labels of a fixed 70/30 split
+  private Matrix[] holdoutSplit(Matrix data) {
+    Matrix shuffled = new Matrix(data, 0, 0, data.rows(), data.cols());
+    shuffled.shuffle(new Random(1));
+    int trainRows = (int) (shuffled.rows() * 0.7);
+    int testRows = shuffled.rows() - trainRows;
+    return new Matrix[] {
+        new Matrix(shuffled, 0, 0, trainRows, shuffled.cols() - 1),
+        new Matrix(shuffled, 0, shuffled.cols() - 1, trainRows, 1),
+        new Matrix(shuffled, trainRows, 0, testRows, shuffled.cols() - 1),
+        new Matrix(shuffled, trainRows, shuffled.cols() - 1, testRows, 1)};
+  }
+
+  // One-vs-rest against the multiclass perceptron: training time, and from one seeded run the epochs, the class
+  // weight vectors changed per training row (the update cost) and the held out accuracy
+  private void benchmarkMulticlass(String datasetName, Matrix data) throws Exception {
+    Matrix[] split = holdoutSplit(data);
+    final Matrix trainFeatures = split[0];
+    final Matrix trainLabels = split[1];
+    String[] schemes = new String[]{"one-vs-rest", "multiclass"};
+    String[] names = new String[schemes.length];
+    PerceptronLearner[] trained = new PerceptronLearner[schemes.length];
+    double[] accuracies = new double[schemes.length];
+
+    PrintStream original = System.out;
+    for (int s = 0; s < schemes.length; ++s) {
+      final boolean multiclass = s == 1;
+      names[s] = datasetName + " perceptron " + schemes[s] + " train";
+      measure(names[s], "ms/op", 1, 1000000.0, () -> {
+        multiclassLearner(multiclass).train(trainFeatures, trainLabels);
+      });
+
+      try {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        trained[s] = multiclassLearner(multiclass);
+        trained[s].train(trainFeatures, trainLabels);
+        accuracies[s] = trained[s].measureAccuracy(split[2], split[3], null);
+      } finally {
+        System.setOut(original);
+      }
+    }
+
+    out.printf("%-12s %12s %8s %14s %12s%n", "Scheme", "Train (ms)", "Epochs", "Updates/row", "Accuracy");
+    for (int s = 0; s < schemes.length; ++s) {
+      Result result = results.get(names[s]);
+      if (result == null) {
+        continue;
+      }
+      double rowsTrained = (double) trained[s].epochsTrained * trainFeatures.rows();
+      out.printf("%-12s %12.1f %8d %14.3f %12.4f%n", schemes[s], result.mean, trained[s].epochsTrained,
+          trained[s].weightUpdates / rowsTrained, accuracies[s]);
+    }
+  }
+
+  private PerceptronLearner multiclassLearner(boolean multiclass) throws Exception {
+    PerceptronLearner learner = new PerceptronLearner(new Random(1234));
+    learner.setParameter("multiclass", Boolean.toString(multiclass));
+    return learner;
+  }
+
+  // Returns whether everything the baseline (if any) measured still ran
+  public boolean run() throws Exception {
+    out.println("Warmup iterations: " + warmupIterations + ", measured iterations: " + measureIterations + ", synthetic scale factor: " + scaleFactor);
+    out.println();
+
+    for (String datasetName : datasetNames) {
+      String fileName = datasetDirectory + File.separator + datasetName + ".arff";
+      Matrix data = new Matrix();
+      data.loadArff(fileName);
+      if (compareMulticlass) {
+        benchmarkMulticlass(datasetName, data);
+        out.println();
+        continue;
+      }
+      if (hogwildThreadCounts != null) {
+        benchmarkHogwild(datasetName, data);
+        benchmarkHogwild(datasetName + "x" + scaleFactor, scaleUp(data));
+        out.println();
+        continue;
+      }
+      benchmarkDataset(datasetName, fileName, data);
+      benchmarkDataset(datasetName + "x" + scaleFactor, null, scaleUp(data));
+      out.println();
+    }
+
+    boolean passed = true;
+    if (compareFile != null) {
+      passed = compareWithBaseline(compareFile);
+    }
+
+    if (saveFile != null) {
+      saveBaseline(saveFile);
+      out.println("Saved results to " + saveFile);
+    }
+    return passed;
+  }
+
+  // Tab separated: name, mean, standard deviation, unit, allocated bytes per op
+  private void saveBaseline(String fileName) throws Exception {
+    PrintWriter writer = new PrintWriter(fileName);
+    for (Result result : results.values()) {
+      writer.println(result.name + "\t" + result.mean + "\t" + result.stdDev + "\t" + result.unit + "\t" + result.allocatedBytes);
+    }
+    writer.close();
+  }
+
+  // A benchmark that failed now but was measured in the baseline counts as broken, and makes the comparison fail.
+  // Benchmarks this run did not include are left out.
+  private boolean compareWithBaseline(String fileName) throws Exception {
+    BufferedReader reader = new BufferedReader(new FileReader(fileName));
+    out.println("Comparison with " + fileName + " (ratio > 1 is slower than the baseline)");
+
+    int broken = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String[] fields = line.split("\t");
+      Result current = results.get(fields[0]);
+      if (current == null) {
+        if (failures.containsKey(fields[0])) {
+          out.printf("%-50s %s%n", fields[0], "FAILED (" + failures.get(fields[0]) + ")");
+          ++broken;
+        }
+        continue;
+      }
+      double baselineMean = Double.parseDouble(fields[1]);
+      double ratio = current.mean / baselineMean;
+      out.printf("%-50s %10.3f -> %-10.3f %-8s x%.2f%s%n", current.name, baselineMean, current.mean, current.unit, ratio, ratio > 1.1 ? "  REGRESSION" : "");
+    }
+    reader.close();
+    if (broken > 0) {
+      out.println(broken + " benchmarks measured in the baseline failed");
+    }
+    return broken == 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    LearnerBenchmark benchmark = new LearnerBenchmark();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-D")) {
+        benchmark.datasetDirectory = args[++i];
+      } else if (args[i].equals("-S")) {
+        benchmark.datasetNames = args[++i].split(",");
+      } else if (args[i].equals("-X")) {
+        benchmark.scaleFactor = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-W")) {
+        benchmark.warmupIterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-I")) {
+        benchmark.measureIterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-alloc")) {
+        benchmark.profileAllocations = true;
+      } else if (args[i].equals("-save")) {
+        benchmark.saveFile = args[++i];
+      } else if (args[i].equals("-compare")) {
+        benchmark.compareFile = args[++i];
+      } else if (args[i].equals("-multiclass")) {
+        benchmark.compareMulticlass = true;
+      } else if (args[i].equals("-hogwild")) {
+        String[] counts = args[++i].split(",");
+        benchmark.hogwildThreadCounts = new int[counts.length];
+        for (int j = 0; j < counts.length; ++j) {
+          benchmark.hogwildThreadCounts[j] = Integer.parseInt(counts[j]);
+        }
+      } else {
+        System.out.println("Usage: LearnerBenchmark [-D datasetDir] [-S dataset,dataset] [-X scaleFactor] [-W warmups] [-I iterations] [-alloc] [-save file] [-compare file] [-hogwild threads,threads] [-multiclass]");
+        return;
+      }
+    }
+    if (!benchmark.run()) {
+      System.exit(1);
+    }
+  }
+}
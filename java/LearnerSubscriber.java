@@ -0,0 +1,75 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+// Last stage of a RowPipeline that trains a learner with partialFit, one mini-batch of rows at a time, so the
+// dataset never has to be in memory as a whole. The label is the last column, as everywhere else.
+public class LearnerSubscriber implements Flow.Subscriber<double[]> {
+
+  SupervisedLearner learner;
+  int batchSize;
+  Matrix featureBatch;
+  Matrix labelBatch;
+  long rowsSeen;
+  Flow.Subscription subscription;
+  CompletableFuture<SupervisedLearner> result = new CompletableFuture<SupervisedLearner>();
+
+  // The learner must already be initialized, or have been trained before, so that partialFit extends it
+  public LearnerSubscriber(SupervisedLearner learner, Matrix schema, int batchSize) {
+    this.learner = learner;
+    this.batchSize = batchSize;
+    featureBatch = new Matrix(schema, 0, 0, 0, schema.cols() - 1);
+    labelBatch = new Matrix(schema, 0, schema.cols() - 1, 0, 1);
+  }
+
+  // Completes once the last batch has been learned
+  public CompletableFuture<SupervisedLearner> getResult() {
+    return result;
+  }
+
+  public long getRowsSeen() {
+    return rowsSeen;
+  }
+
+  private void fitBatch() throws Exception {
+    learner.partialFit(featureBatch, labelBatch);
+    featureBatch.m_data.clear();
+    labelBatch.m_data.clear();
+  }
+
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(batchSize);
+  }
+
+  public void onNext(double[] row) {
+    featureBatch.m_data.add(Arrays.copyOf(row, row.length - 1));
+    labelBatch.m_data.add(new double[] { row[row.length - 1] });
+    ++rowsSeen;
+    if (featureBatch.rows() == batchSize) {
+      try {
+        fitBatch();
+      } catch (Exception e) {
+        subscription.cancel();
+        result.completeExceptionally(e);
+        return;
+      }
+      subscription.request(batchSize);
+    }
+  }
+
+  public void onError(Throwable error) {
+    result.completeExceptionally(error);
+  }
+
+  public void onComplete() {
+    try {
+      if (featureBatch.rows() > 0) {
+        fitBatch();
+      }
+      result.complete(learner);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Accuracy as a function of training set size. Every size is a prefix of the same (already shuffled) training
+// set, so each smaller set is contained in the larger ones. Learners whose train is one pass that partialFit can
+// repeat build one model and extend it with the rows each new size adds. The others, including those that train
+// for several epochs, train a fresh model per size, and since those runs are independent they share a thread pool.
+public class LearningCurve {
+
+  String learnerName;
+  Map<String, String> parameters;
+  Random rand;
+  int numSizes;
+
+  // Constants
+  int numThreads = Runtime.getRuntime().availableProcessors();
+
+  public LearningCurve(String learnerName, Map<String, String> parameters, Random rand, int numSizes) {
+    this.learnerName = learnerName;
+    this.parameters = parameters;
+    this.rand = rand;
+    this.numSizes = numSizes;
+  }
+
+  public static class Point {
+    int size;
+    boolean incremental; // Extended from the previous size rather than trained from scratch
+    double trainSeconds; // Time to get a model of this size, including the smaller sizes it was extended from
+    double accuracy;
+  }
+
+  private SupervisedLearner createLearner(Random learnerRand) throws Exception {
+    MLSystemManager manager = new MLSystemManager();
+    SupervisedLearner learner = manager.getLearner(learnerName, learnerRand);
+    manager.setParameters(learner, parameters);
+    return learner;
+  }
+
+  // Evenly spaced sizes, the last one being the whole training set
+  private int[] sizes(int numRows) {
+    int count = Math.min(numSizes, numRows);
+    int[] sizes = new int[count];
+    for (int i = 0; i < count; ++i) {
+      sizes[i] = (int) ((long) (i + 1) * numRows / count);
+    }
+    return sizes;
+  }
+
+  public List<Point> run(Matrix trainFeatures, Matrix trainLabels, Matrix testFeatures, Matrix testLabels) throws Exception {
+    int[] sizes = sizes(trainFeatures.rows());
+    SupervisedLearner first = createLearner(new Random(rand.nextLong()));
+    if (first.supportsPartialFit() && first.trainsInOnePass()) {
+      return runIncremental(first, sizes, trainFeatures, trainLabels, testFeatures, testLabels);
+    }
+    return runIndependent(sizes, trainFeatures, trainLabels, testFeatures, testLabels);
+  }
+
+  private List<Point> runIncremental(SupervisedLearner learner, int[] sizes, Matrix trainFeatures, Matrix trainLabels,
+      Matrix testFeatures, Matrix testLabels) throws Exception {
+    List<Point> points = new ArrayList<Point>();
+    long trainNanos = 0;
+    int previousSize = 0;
+
+    learner.initialize(trainFeatures, trainLabels);
+    for (int size : sizes) {
+      Matrix newFeatures = new Matrix(trainFeatures, previousSize, 0, size - previousSize, trainFeatures.cols());
+      Matrix newLabels = new Matrix(trainLabels, previousSize, 0, size - previousSize, 1);
+      long startTime = System.nanoTime();
+      learner.partialFit(newFeatures, newLabels);
+      trainNanos += System.nanoTime() - startTime;
+
+      Point point = new Point();
+      point.size = size;
+      point.incremental = true;
+      point.trainSeconds = trainNanos / 1e9;
+      point.accuracy = learner.measureAccuracy(testFeatures, testLabels, null);
+      points.add(point);
+      previousSize = size;
+    }
+    return points;
+  }
+
+  private List<Point> runIndependent(int[] sizes, final Matrix trainFeatures, final Matrix trainLabels,
+      final Matrix testFeatures, final Matrix testLabels) throws Exception {
+    // Seeds are drawn up front so that the results do not depend on which task runs first
+    long[] seeds = new long[sizes.length];
+    for (int i = 0; i < sizes.length; ++i) {
+      seeds[i] = rand.nextLong();
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, sizes.length));
+    List<Future<Point>> futures = new ArrayList<Future<Point>>();
+    try {
+      for (int i = 0; i < sizes.length; ++i) {
+        final int size = sizes[i];
+        final long seed = seeds[i];
+        futures.add(pool.submit(() -> {
+          // Learners shuffle their training set in place, so every task trains on its own copy
+          Matrix features = new Matrix(trainFeatures, 0, 0, size, trainFeatures.cols());
+          Matrix labels = new Matrix(trainLabels, 0, 0, size, 1);
+          SupervisedLearner learner = createLearner(new Random(seed));
+          long startTime = System.nanoTime();
+          learner.train(features, labels);
+          Point point = new Point();
+          point.size = size;
+          point.trainSeconds = (System.nanoTime() - startTime) / 1e9;
+          point.accuracy = learner.measureAccuracy(testFeatures, testLabels, null);
+          return point;
+        }));
+      }
+
+      List<Point> points = new ArrayList<Point>();
+      for (Future<Point> future : futures) {
+        points.add(future.get());
+      }
+      return points;
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public static void printTable(List<Point> points, PrintStream out) {
+    out.printf("%10s %14s %12s%n", "Size", "Train (s)", "Accuracy");
+    for (Point point : points) {
+      out.printf("%10d %14.4f %12.4f%n", point.size, point.trainSeconds, point.accuracy);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Linear least squares by the normal equations. X'X and X'y are summed in a single pass over the rows, in blocks
+// that several threads take in turn, then the blocks are added up and X'X w = X'y is solved by Cholesky
+// decomposition. The inputs are the perceptron's (features, quadratic products if asked for, and 1 for the
+// intercept), so the fit is exact in one pass instead of many epochs.
+//
+// Blocks have a fixed size and are added up in order, so the weights do not depend on the number of threads.
+public class LeastSquares {
+
+  static final int BLOCK_ROWS = 4096;
+  static final int MAX_JITTER_TRIES = 10;
+
+  // X'X (upper triangle only, row major) and X'y over one block of rows
+  static class Sums {
+    double[] xtx;
+    double[] xty;
+
+    Sums(int numWeights) {
+      xtx = new double[numWeights * numWeights];
+      xty = new double[numWeights];
+    }
+
+    void add(Sums other) {
+      for (int i = 0; i < xtx.length; ++i) {
+        xtx[i] += other.xtx[i];
+      }
+      for (int i = 0; i < xty.length; ++i) {
+        xty[i] += other.xty[i];
+      }
+    }
+  }
+
+  static Sums accumulate(Matrix features, Matrix labels, int start, int end, boolean quadratic, int numWeights) {
+    Sums sums = new Sums(numWeights);
+    for (int row = start; row < end; ++row) {
+      double[] x = QuadraticFeatures.expand(features.row(row), quadratic, numWeights, true);
+      double y = labels.get(row, 0);
+      for (int a = 0; a < numWeights; ++a) {
+        double value = x[a];
+        if (value == 0.0) {
+          continue; // One-hot columns are mostly zero
+        }
+        int offset = a * numWeights;
+        for (int b = a; b < numWeights; ++b) {
+          sums.xtx[offset + b] += value * x[b];
+        }
+        sums.xty[a] += value * y;
+      }
+    }
+    return sums;
+  }
+
+  // Weights minimizing the squared error plus ridge times the squared weights (all but the last, the intercept)
+  public static double[] fit(final Matrix features, final Matrix labels, final boolean quadratic, final int numWeights,
+      double ridge, int numThreads) throws Exception {
+    int rows = features.rows();
+    int numBlocks = Math.max(1, (rows + BLOCK_ROWS - 1) / BLOCK_ROWS);
+
+    Sums total;
+    if (numThreads <= 1 || numBlocks == 1) {
+      total = accumulate(features, labels, 0, Math.min(rows, BLOCK_ROWS), quadratic, numWeights);
+      for (int block = 1; block < numBlocks; ++block) {
+        int start = block * BLOCK_ROWS;
+        total.add(accumulate(features, labels, start, Math.min(rows, start + BLOCK_ROWS), quadratic, numWeights));
+      }
+    } else {
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, numBlocks), runnable -> {
+        Thread thread = new Thread(runnable, "least-squares");
+        thread.setDaemon(true);
+        return thread;
+      });
+      try {
+        List<Future<Sums>> futures = new ArrayList<Future<Sums>>();
+        for (int block = 0; block < numBlocks; ++block) {
+          final int start = block * BLOCK_ROWS;
+          final int end = Math.min(rows, start + BLOCK_ROWS);
+          futures.add(pool.submit(() -> accumulate(features, labels, start, end, quadratic, numWeights)));
+        }
+        total = futures.get(0).get();
+        for (int block = 1; block < numBlocks; ++block) {
+          total.add(futures.get(block).get());
+        }
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    return solve(total, numWeights, ridge);
+  }
+
+  // The weights for sums gathered so far, which are left as they are so that more rows can be added to them
+  static double[] solve(Sums sums, int numWeights, double ridge) throws Exception {
+    double[] xtx = sums.xtx.clone();
+    for (int a = 0; a < numWeights - 1; ++a) {
+      xtx[a * numWeights + a] += ridge;
+    }
+    return solve(xtx, sums.xty, numWeights);
+  }
+
+  // Solves A w = b for the symmetric A given by its upper triangle. Columns that depend on each other (such as
+  // the one-hot columns of an attribute together with the intercept) make A singular, in which case a small
+  // multiple of its mean diagonal is added, growing tenfold until the decomposition succeeds.
+  static double[] solve(double[] a, double[] b, int n) throws Exception {
+    double trace = 0.0;
+    for (int i = 0; i < n; ++i) {
+      trace += a[i * n + i];
+    }
+    double jitter = 0.0;
+    for (int attempt = 0; attempt <= MAX_JITTER_TRIES; ++attempt) {
+      double[] lower = cholesky(a, n, jitter);
+      if (lower != null) {
+        return substitute(lower, b, n);
+      }
+      jitter = jitter == 0.0 ? 1e-10 * Math.max(trace / n, 1e-300) : jitter * 10;
+    }
+    throw new Exception("Least squares system is singular");
+  }
+
+  // The lower triangular L with L L' = A + jitter I, or null if A + jitter I is not positive definite
+  static double[] cholesky(double[] a, int n, double jitter) {
+    double[] lower = new double[n * n];
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        double sum = a[j * n + i]; // Upper triangle entry (j, i) is A(i, j)
+        if (i == j) {
+          sum += jitter;
+        }
+        for (int k = 0; k < j; ++k) {
+          sum -= lower[i * n + k] * lower[j * n + k];
+        }
+        if (i == j) {
+          if (!(sum > 0.0)) {
+            return null;
+          }
+          lower[i * n + i] = Math.sqrt(sum);
+        } else {
+          lower[i * n + j] = sum / lower[j * n + j];
+        }
+      }
+    }
+    return lower;
+  }
+
+  // Forward substitution for L z = b, then back substitution for L' w = z
+  static double[] substitute(double[] lower, double[] b, int n) {
+    double[] z = new double[n];
+    for (int i = 0; i < n; ++i) {
+      double sum = b[i];
+      for (int k = 0; k < i; ++k) {
+        sum -= lower[i * n + k] * z[k];
+      }
+      z[i] = sum / lower[i * n + i];
+    }
+    double[] w = new double[n];
+    for (int i = n - 1; i >= 0; --i) {
+      double sum = z[i];
+      for (int k = i + 1; k < n; ++k) {
+        sum -= lower[k * n + i] * w[k];
+      }
+      w[i] = sum / lower[i * n + i];
+    }
+    return w;
+  }
+}
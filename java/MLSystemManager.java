@@ -5,11 +5,28 @@
 
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.io.File;
 
 
 public class MLSystemManager {
+
+	// Every name accepted by getLearner, used by tools that run all of the learners
+	static String[] learnerNames = new String[]{"baseline", "perceptron", "neuralnet", "decisiontree", "knn"};
+
+	boolean exitOnUsageError = true; // A resident daemon must survive bad arguments
+	String workingDirectory; // Relative file names are resolved against this when set
+	Map<String, Matrix> datasetCache; // Loaded datasets, keyed by path and modification time, when set
+
+	// Thrown instead of exiting when the arguments are invalid and exitOnUsageError is false
+	static class UsageException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public UsageException() { super("Invalid arguments"); }
+	}
 	
 	/**
 	 *  When you make a new learning algorithm, you should add a line for it to this method.
@@ -24,32 +41,198 @@ public class MLSystemManager {
 		else throw new Exception("Unrecognized model: " + model);
 	}
 
+	// Applies name=value settings given with -P
+	public void setParameters(SupervisedLearner learner, Map<String, String> parameters) throws Exception {
+		for (Map.Entry<String, String> parameter : parameters.entrySet())
+			learner.setParameter(parameter.getKey(), parameter.getValue());
+	}
+
+	// Saves the trained learner when -M was given
+	private void saveModel(ArgParser parser, String learnerName, SupervisedLearner learner, Matrix features, Matrix labels) throws Exception {
+		if (parser.getModelOutput() == null)
+			return;
+		ModelIO.save(resolve(parser.getModelOutput()), learnerName, learner, features, labels);
+		System.out.println("Model saved to " + parser.getModelOutput());
+	}
+
+	static void commitFoldEvent(TrainingEvents.Fold foldEvent, String learnerName, int fold, int trainRows, int testRows, double accuracy) {
+		if (foldEvent.shouldCommit()) {
+			foldEvent.learner = learnerName;
+			foldEvent.fold = fold;
+			foldEvent.trainRows = trainRows;
+			foldEvent.testRows = testRows;
+			foldEvent.accuracy = accuracy;
+			foldEvent.commit();
+		}
+	}
+
+	// Reports the trained model's estimated size when -B was given
+	private void reportModelMemory(ArgParser parser, SupervisedLearner learner) {
+		if (parser.getMemoryBudget() != null)
+			System.out.println("Model memory (estimated): " + MemoryFootprint.format(learner.estimateModelBytes()));
+	}
+
+	String resolve(String fileName) {
+		if (workingDirectory == null || new File(fileName).isAbsolute())
+			return fileName;
+		return new File(workingDirectory, fileName).getPath();
+	}
+
+	// Loads the ARFF file, or copies it from the dataset cache when one is kept. The copy
+	// matters because normalize and shuffle change the matrix in place.
+	public Matrix loadData(String fileName) throws Exception {
+		return loadData(fileName, false);
+	}
+
+	// As above, keeping the rows outside the heap if offHeap is set. Copies of an off-heap matrix stay off the heap.
+	public Matrix loadData(String fileName, boolean offHeap) throws Exception {
+		fileName = resolve(fileName);
+		TrainingEvents.DatasetLoad loadEvent = new TrainingEvents.DatasetLoad();
+		loadEvent.begin();
+		if (datasetCache == null) {
+			Matrix data = new Matrix();
+			data.loadArff(fileName, offHeap);
+			commitLoadEvent(loadEvent, fileName, data, false);
+			return data;
+		}
+		File file = new File(fileName);
+		String path = file.getCanonicalPath() + "@";
+		String version = path + file.lastModified();
+		String key = version + (offHeap ? "@offheap" : "");
+		Matrix cached;
+		boolean fromCache = true;
+		synchronized (datasetCache) {
+			cached = datasetCache.get(key);
+		}
+		if (cached == null) {
+			cached = new Matrix();
+			cached.loadArff(fileName, offHeap);
+			synchronized (datasetCache) {
+				// Copies of earlier versions of the file will never be asked for again
+				datasetCache.keySet().removeIf(other -> other.startsWith(path) && !other.startsWith(version + "@") && !other.equals(version));
+				datasetCache.put(key, cached);
+			}
+			fromCache = false;
+		}
+		Matrix data = new Matrix(cached, 0, 0, cached.rows(), cached.cols());
+		commitLoadEvent(loadEvent, fileName, data, fromCache);
+		return data;
+	}
+
+	private void commitLoadEvent(TrainingEvents.DatasetLoad loadEvent, String fileName, Matrix data, boolean fromCache) {
+		if (loadEvent.shouldCommit()) {
+			loadEvent.file = fileName;
+			loadEvent.rows = data.rows();
+			loadEvent.cols = data.cols();
+			loadEvent.offHeap = data.m_offHeap != null;
+			loadEvent.fromCache = fromCache;
+			loadEvent.commit();
+		}
+	}
+
 	public void run(String[] args) throws Exception {
 
 		//args = new String[]{"-L", "baseline", "-A", "data/iris.arff", "-E", "cross", "10", "-N"};
 
-		//Random rand = new Random(1234); // Use a seed for deterministic results (makes debugging easier)
-		Random rand = new Random(); // No seed for non-deterministic results
-
 		//Parse the command line arguments
 		ArgParser parser = new ArgParser(args);
+
+		// Use a seed (-S) for deterministic results (makes debugging easier), no seed for non-deterministic results
+		Random rand = parser.getSeed() != null ? new Random(parser.getSeed()) : new Random();
+
 		String fileName = parser.getARFF(); //File specified by the user
 		String learnerName = parser.getLearner(); //Learning algorithm specified by the user
 		String evalMethod = parser.getEvaluation(); //Evaluation method specified by the user
 		String evalParameter = parser.getEvalParameter(); //Evaluation parameters specified by the user
 		boolean printConfusionMatrix = parser.getVerbose();
 		boolean normalize = parser.getNormalize();
+		PhaseTimer timer = new PhaseTimer();
 
 		// Load the model
-		SupervisedLearner learner = getLearner(learnerName, rand);
+		SupervisedLearner learner = null;
+		if (learnerName != null)
+		{
+			learner = getLearner(learnerName, rand);
+			setParameters(learner, parser.getLearnerParameters());
+		}
 
 		// Load the ARFF file
-		Matrix data = new Matrix();
-		data.loadArff(fileName);
+		PhaseTimer.Phase phase = timer.start("load");
+		Matrix data;
+		// With -E training, a learner whose train is a single pass that partialFit repeats is the pipeline's last
+		// stage. Learners that train for several epochs need the whole dataset at once, so they get the matrix.
+		boolean streamed = parser.getPipelineStages() != null && evalMethod.equals("training") && learner != null
+			&& parser.getModelInput() == null && !normalize && learner.supportsPartialFit() && learner.trainsInOnePass();
+		if (streamed)
+		{
+			// The learner trains on mini-batches while later rows are still being read and transformed, and holds
+			// the reader back when it falls behind
+			timer.stop(phase);
+			phase = timer.start("train");
+			RowPipeline.create(resolve(fileName), parser.getPipelineStages()).fit(learner, RowPipeline.defaultBatchSize);
+			timer.stop(phase);
+			System.out.println("Trained through pipeline stages: " + String.join(", ", parser.getPipelineStages()));
+			System.out.println("Time to train (in seconds): " + phase.seconds());
+
+			// Measuring the training accuracy reads the rows again
+			phase = timer.start("load");
+			data = RowPipeline.create(resolve(fileName), parser.getPipelineStages()).toMatrix();
+		}
+		else if (parser.getPipelineStages() != null)
+		{
+			// Reading and the transforms run concurrently as separate stages
+			data = RowPipeline.create(resolve(fileName), parser.getPipelineStages()).toMatrix();
+			System.out.println("Loaded through pipeline stages: " + String.join(", ", parser.getPipelineStages()));
+		}
+		else
+		{
+			// With -B, datasets estimated to be over the memory budget are kept off the heap, unless their off-heap
+			// copy (in whole buffers) would take more room still. The estimate reads the whole file, so it is only
+			// made when asked for.
+			boolean offHeap = false;
+			if (parser.getMemoryBudget() != null)
+			{
+				long budget = parser.getMemoryBudget();
+				MemoryFootprint.Estimate estimate = MemoryFootprint.estimateArff(resolve(fileName));
+				offHeap = estimate.heapBytes > budget && estimate.offHeapBytes < estimate.heapBytes;
+				System.out.println("Estimated dataset size: " + estimate.rows + " rows x " + estimate.cols + " columns, "
+					+ MemoryFootprint.format(estimate.heapBytes) + " on the heap, " + MemoryFootprint.format(estimate.offHeapBytes)
+					+ " off the heap (budget " + MemoryFootprint.format(budget) + ")");
+				if (offHeap)
+					System.out.println("Over the budget, so the rows are kept off the heap");
+				else if (estimate.heapBytes > budget)
+					System.out.println("Over the budget, but kept on the heap since the rows would take more room off it");
+			}
+			data = loadData(fileName, offHeap);
+		}
+		timer.stop(phase);
+		if (parser.getMemoryBudget() != null)
+		{
+			System.out.println("Dataset memory (retained): " + MemoryFootprint.format(MemoryFootprint.matrixBytes(data)));
+			if (learnerName != null && learnerName.equals("perceptron"))
+				System.out.println("Quadratic perceptron features for every row would take: "
+					+ MemoryFootprint.format(MemoryFootprint.quadraticFeatureBytes(data.rows(), data.cols() - 1)));
+		}
 		if (normalize)
 		{
 			System.out.println("Using normalized data\n");
+			phase = timer.start("normalize");
 			data.normalize();
+			timer.stop(phase);
+		}
+
+		// A saved model (-I) is evaluated as is, without training
+		boolean pretrained = parser.getModelInput() != null;
+		if (pretrained)
+		{
+			if (!evalMethod.equals("training") && !evalMethod.equals("static"))
+				throw new Exception("A saved model can only be evaluated with the training or static methods");
+			phase = timer.start("loadmodel");
+			ModelIO.Model model = ModelIO.load(resolve(parser.getModelInput()), rand);
+			timer.stop(phase);
+			learner = model.learner;
+			learnerName = model.learnerName;
+			System.out.println("Loaded " + learnerName + " model in (seconds): " + phase.seconds());
 		}
 
 		// Print some stats
@@ -64,14 +247,26 @@ public class MLSystemManager {
 		if (evalMethod.equals("training"))
 		{
 			System.out.println("Calculating accuracy on training set...");
+			phase = timer.start("copy");
 			Matrix features = new Matrix(data, 0, 0, data.rows(), data.cols() - 1);
 			Matrix labels = new Matrix(data, 0, data.cols() - 1, data.rows(), 1);
+			timer.stop(phase);
 			Matrix confusion = new Matrix();
-			double startTime = System.currentTimeMillis();
-			learner.train(features, labels);
-			double elapsedTime = System.currentTimeMillis() - startTime;
-			System.out.println("Time to train (in seconds): " + elapsedTime / 1000.0);
+			if (!pretrained)
+			{
+				if (!streamed)
+				{
+					phase = timer.start("train");
+					learner.train(features, labels);
+					timer.stop(phase);
+					System.out.println("Time to train (in seconds): " + phase.seconds());
+				}
+				saveModel(parser, learnerName, learner, features, labels);
+				reportModelMemory(parser, learner);
+			}
+			phase = timer.start("evaluate");
 			double accuracy = learner.measureAccuracy(features, labels, confusion);
+			timer.stop(phase);
 			System.out.println("Training set accuracy: " + accuracy);
 			if(printConfusionMatrix) {
 				System.out.println("\nConfusion matrix: (Row=target value, Col=predicted value)");
@@ -81,26 +276,40 @@ public class MLSystemManager {
 		}
 		else if (evalMethod.equals("static"))
 		{
-			Matrix testData = new Matrix();
-			testData.loadArff(evalParameter);
+			phase = timer.start("load");
+			Matrix testData = loadData(evalParameter);
+			timer.stop(phase);
 			if (normalize)
+			{
+				phase = timer.start("normalize");
 				testData.normalize(); // BUG! This may normalize differently from the training data. It should use the same ranges for normalization!
+				timer.stop(phase);
+			}
 
 			System.out.println("Calculating accuracy on separate test set...");
 			System.out.println("Test set name: " + evalParameter);
 			System.out.println("Number of test instances: " + testData.rows());
+			phase = timer.start("copy");
 			Matrix features = new Matrix(data, 0, 0, data.rows(), data.cols() - 1);
 			Matrix labels = new Matrix(data, 0, data.cols() - 1, data.rows(), 1);
-			double startTime = System.currentTimeMillis();
-			learner.train(features, labels);
-			double elapsedTime = System.currentTimeMillis() - startTime;
-			System.out.println("Time to train (in seconds): " + elapsedTime / 1000.0);
-			double trainAccuracy = learner.measureAccuracy(features, labels, null);
-			System.out.println("Training set accuracy: " + trainAccuracy);
 			Matrix testFeatures = new Matrix(testData, 0, 0, testData.rows(), testData.cols() - 1);
 			Matrix testLabels = new Matrix(testData, 0, testData.cols() - 1, testData.rows(), 1);
+			timer.stop(phase);
+			if (!pretrained)
+			{
+				phase = timer.start("train");
+				learner.train(features, labels);
+				timer.stop(phase);
+				System.out.println("Time to train (in seconds): " + phase.seconds());
+				saveModel(parser, learnerName, learner, features, labels);
+				reportModelMemory(parser, learner);
+			}
+			phase = timer.start("evaluate");
+			double trainAccuracy = learner.measureAccuracy(features, labels, null);
+			System.out.println("Training set accuracy: " + trainAccuracy);
 			Matrix confusion = new Matrix();
 			double testAccuracy = learner.measureAccuracy(testFeatures, testLabels, confusion);
+			timer.stop(phase);
 			System.out.println("Test set accuracy: " + testAccuracy);
 			if(printConfusionMatrix) {
 				System.out.println("\nConfusion matrix: (Row=target value, Col=predicted value)");
@@ -116,25 +325,33 @@ public class MLSystemManager {
 				throw new Exception("Percentage for random evaluation must be between 0 and 1");
 			System.out.println("Percentage used for training: " + trainPercent);
 			System.out.println("Percentage used for testing: " + (1 - trainPercent));
+			phase = timer.start("split");
 			data.shuffle(rand);
 			int trainSize = (int)(trainPercent * data.rows());
+			timer.stop(phase);
+			phase = timer.start("copy");
 			Matrix trainFeatures = new Matrix(data, 0, 0, trainSize, data.cols() - 1);
 			Matrix trainLabels = new Matrix(data, 0, data.cols() - 1, trainSize, 1);
 			Matrix testFeatures = new Matrix(data, trainSize, 0, data.rows() - trainSize, data.cols() - 1);
 			Matrix testLabels = new Matrix(data, trainSize, data.cols() - 1, data.rows() - trainSize, 1);
-			double startTime = System.currentTimeMillis();
+			timer.stop(phase);
+			phase = timer.start("train");
       if (learnerName.equals("neuralnet")) {
 			  Matrix features = new Matrix(data, 0, 0, data.rows(), data.cols() - 1);
 			  Matrix labels = new Matrix(data, 0, data.cols() - 1, data.rows(), 1);
         learner.setValidationSet(features, labels); // Used for stopping criteria
       }
 			learner.train(trainFeatures, trainLabels);
-			double elapsedTime = System.currentTimeMillis() - startTime;
-			System.out.println("Time to train (in seconds): " + elapsedTime / 1000.0);
+			timer.stop(phase);
+			System.out.println("Time to train (in seconds): " + phase.seconds());
+			saveModel(parser, learnerName, learner, trainFeatures, trainLabels);
+			reportModelMemory(parser, learner);
+			phase = timer.start("evaluate");
 			double trainAccuracy = learner.measureAccuracy(trainFeatures, trainLabels, null);
 			System.out.println("Training set accuracy: " + trainAccuracy);
 			Matrix confusion = new Matrix();
 			double testAccuracy = learner.measureAccuracy(testFeatures, testLabels, confusion);
+			timer.stop(phase);
 			System.out.println("Test set accuracy: " + testAccuracy);
 			if(printConfusionMatrix) {
 				System.out.println("\nConfusion matrix: (Row=target value, Col=predicted value)");
@@ -149,38 +366,212 @@ public class MLSystemManager {
 			if (folds <= 0)
 				throw new Exception("Number of folds must be greater than 0");
 			System.out.println("Number of folds: " + folds);
+			// With a results cache every fold gets its own learner seeded by seed + fold, as in ExperimentBatch,
+			// so a fold computed now matches one read from the cache whatever else ran before it
+			ResultsCache cache = null;
+			String dataHash = null;
+			if (parser.getCacheDirectory() != null)
+			{
+				if (parser.getSeed() == null)
+					throw new Exception("A results cache (-C) needs a seed (-S), otherwise the results cannot be repeated");
+				cache = new ResultsCache(resolve(parser.getCacheDirectory()));
+				dataHash = ResultsCache.hashFile(resolve(fileName));
+			}
 			int reps = 1;
 			double sumAccuracy = 0.0;
-			double elapsedTime = 0.0;
+			long elapsedNanos = 0;
+			int cachedFolds = 0;
 			for(int j = 0; j < reps; j++) {
+				phase = timer.start("split");
 				data.shuffle(rand);
+				timer.stop(phase);
 				for (int i = 0; i < folds; i++) {
 					int begin = i * data.rows() / folds;
 					int end = (i + 1) * data.rows() / folds;
+					String cacheKey = null;
+					if (cache != null)
+					{
+						String split = "cross " + folds + " fold " + i + (normalize ? " normalize" : "")
+							+ (parser.getPipelineStages() != null ? " pipeline " + String.join(",", parser.getPipelineStages()) : "");
+						cacheKey = ResultsCache.key(dataHash, learnerName, parser.getLearnerParameters(), parser.getSeed(), split);
+						double[] cached = cache.get(cacheKey);
+						if (cached != null)
+						{
+							elapsedNanos += (long)(cached[0] * 1e9);
+							sumAccuracy += cached[1];
+							cachedFolds++;
+							System.out.println("Rep=" + j + ", Fold=" + i + ", Accuracy=" + cached[1] + " (cached)");
+							continue;
+						}
+						learner = getLearner(learnerName, new Random(parser.getSeed() + i));
+						setParameters(learner, parser.getLearnerParameters());
+					}
+					TrainingEvents.Fold foldEvent = new TrainingEvents.Fold();
+					foldEvent.begin();
+					phase = timer.start("copy", i);
 					Matrix trainFeatures = new Matrix(data, 0, 0, begin, data.cols() - 1);
 					Matrix trainLabels = new Matrix(data, 0, data.cols() - 1, begin, 1);
 					Matrix testFeatures = new Matrix(data, begin, 0, end - begin, data.cols() - 1);
 					Matrix testLabels = new Matrix(data, begin, data.cols() - 1, end - begin, 1);
 					trainFeatures.add(data, end, 0, data.rows() - end);
 					trainLabels.add(data, end, data.cols() - 1, data.rows() - end);
-					double startTime = System.currentTimeMillis();
+					timer.stop(phase);
+					phase = timer.start("train", i);
 					learner.train(trainFeatures, trainLabels);
-					elapsedTime += System.currentTimeMillis() - startTime;
+					long trainNanos = timer.stop(phase).wallNanos;
+					elapsedNanos += trainNanos;
+					phase = timer.start("evaluate", i);
 					double accuracy = learner.measureAccuracy(testFeatures, testLabels, null);
+					timer.stop(phase);
+					commitFoldEvent(foldEvent, learnerName, i, trainFeatures.rows(), testFeatures.rows(), accuracy);
 					sumAccuracy += accuracy;
+					if (cache != null)
+						cache.put(cacheKey, new double[]{trainNanos / 1e9, accuracy});
 					System.out.println("Rep=" + j + ", Fold=" + i + ", Accuracy=" + accuracy);
 				}
 			}
-			elapsedTime /= (reps * folds);
-			System.out.println("Average time to train (in seconds): " + elapsedTime / 1000.0);
+			if (cache != null)
+				System.out.println("Folds read from the results cache: " + cachedFolds + " of " + (reps * folds));
+			System.out.println("Average time to train (in seconds): " + elapsedNanos / 1e9 / (reps * folds));
 			System.out.println("Mean accuracy=" + (sumAccuracy / (reps * folds)));
 		}
+		else if (evalMethod.equals("adaptive"))
+		{
+			// Folds are defined as in cross, but run one at a time until the running 95% interval of the
+			// mean is narrow enough, or lies entirely on the wrong side of the reference score
+			System.out.println("Calculating accuracy using adaptive cross-validation...");
+			int maxFolds = Integer.parseInt(evalParameter);
+			if (maxFolds < 2)
+				throw new Exception("Number of folds must be at least 2");
+			int minFolds = Math.min(3, maxFolds);
+			double maxHalfWidth = parser.getMaxHalfWidth();
+			Double referenceScore = parser.getReferenceScore();
+			boolean lowerIsBetter = data.valueCount(data.cols() - 1) == 0; // RMSE for continuous labels
+			System.out.println("Maximum number of folds: " + maxFolds);
+			System.out.println("Target interval half-width: " + maxHalfWidth);
+			System.out.println("Reference score: " + (referenceScore != null ? referenceScore : "baseline learner on the same folds"));
+			phase = timer.start("split");
+			data.shuffle(rand);
+			timer.stop(phase);
+			RunningInterval interval = new RunningInterval();
+			RunningInterval baselineInterval = new RunningInterval();
+			BaselineLearner baseline = new BaselineLearner();
+			String stopReason = "every fold was run";
+			long elapsedNanos = 0;
+			for (int i = 0; i < maxFolds; i++) {
+				int begin = i * data.rows() / maxFolds;
+				int end = (i + 1) * data.rows() / maxFolds;
+				TrainingEvents.Fold foldEvent = new TrainingEvents.Fold();
+				foldEvent.begin();
+				phase = timer.start("copy", i);
+				Matrix trainFeatures = new Matrix(data, 0, 0, begin, data.cols() - 1);
+				Matrix trainLabels = new Matrix(data, 0, data.cols() - 1, begin, 1);
+				Matrix testFeatures = new Matrix(data, begin, 0, end - begin, data.cols() - 1);
+				Matrix testLabels = new Matrix(data, begin, data.cols() - 1, end - begin, 1);
+				trainFeatures.add(data, end, 0, data.rows() - end);
+				trainLabels.add(data, end, data.cols() - 1, data.rows() - end);
+				timer.stop(phase);
+				phase = timer.start("train", i);
+				learner.train(trainFeatures, trainLabels);
+				elapsedNanos += timer.stop(phase).wallNanos;
+				phase = timer.start("evaluate", i);
+				double accuracy = learner.measureAccuracy(testFeatures, testLabels, null);
+				if (referenceScore == null) {
+					baseline.train(trainFeatures, trainLabels);
+					baselineInterval.add(baseline.measureAccuracy(testFeatures, testLabels, null));
+				}
+				timer.stop(phase);
+				commitFoldEvent(foldEvent, learnerName, i, trainFeatures.rows(), testFeatures.rows(), accuracy);
+				interval.add(accuracy);
+				double reference = referenceScore != null ? referenceScore : baselineInterval.mean();
+				System.out.println("Fold=" + i + ", Accuracy=" + accuracy + ", Mean=" + interval.mean() + " +- " + interval.halfWidth() + ", Reference=" + reference);
+				if (interval.count() < minFolds)
+					continue;
+				if (interval.halfWidth() <= maxHalfWidth) {
+					stopReason = "the interval is narrower than +- " + maxHalfWidth;
+					break;
+				}
+				if (lowerIsBetter ? interval.lower() > reference : interval.upper() < reference) {
+					stopReason = "the interval is entirely worse than the reference score";
+					break;
+				}
+			}
+			System.out.println("Folds run: " + interval.count() + " of " + maxFolds + ", stopped because " + stopReason);
+			System.out.println("Average time to train (in seconds): " + elapsedNanos / 1e9 / interval.count());
+			System.out.println("Mean accuracy=" + interval.mean() + " (95% interval " + interval.lower() + " to " + interval.upper() + ")");
+		}
+		else if (evalMethod.equals("halving"))
+		{
+			System.out.println("Searching neural net configurations with successive halving...");
+			int numConfigurations = Integer.parseInt(evalParameter);
+			if (numConfigurations <= 0)
+				throw new Exception("Number of configurations must be greater than 0");
+			if (!learnerName.equals("neuralnet"))
+				throw new Exception("Successive halving only searches neuralnet configurations");
+			System.out.println("Number of configurations: " + numConfigurations);
+			phase = timer.start("split");
+			data.shuffle(rand);
+			int trainSize = (int)(0.75 * data.rows());
+			timer.stop(phase);
+			phase = timer.start("copy");
+			Matrix trainFeatures = new Matrix(data, 0, 0, trainSize, data.cols() - 1);
+			Matrix trainLabels = new Matrix(data, 0, data.cols() - 1, trainSize, 1);
+			Matrix validationFeatures = new Matrix(data, trainSize, 0, data.rows() - trainSize, data.cols() - 1);
+			Matrix validationLabels = new Matrix(data, trainSize, data.cols() - 1, data.rows() - trainSize, 1);
+			timer.stop(phase);
+			SuccessiveHalving search = new SuccessiveHalving(rand, numConfigurations);
+			phase = timer.start("train");
+			NeuralNet best = search.search(trainFeatures, trainLabels, validationFeatures, validationLabels);
+			timer.stop(phase);
+			System.out.println("Time to search (in seconds): " + phase.seconds());
+			phase = timer.start("evaluate");
+			System.out.println("Training set accuracy: " + best.measureAccuracy(trainFeatures, trainLabels, null));
+			System.out.println("Validation set accuracy: " + best.measureAccuracy(validationFeatures, validationLabels, null));
+			timer.stop(phase);
+		}
+		else if (evalMethod.equals("curve"))
+		{
+			System.out.println("Calculating a learning curve on a random hold-out set...");
+			int numSizes = Integer.parseInt(evalParameter);
+			if (numSizes <= 0)
+				throw new Exception("Number of training set sizes must be greater than 0");
+			System.out.println("Number of training set sizes: " + numSizes);
+			phase = timer.start("split");
+			data.shuffle(rand);
+			int trainSize = (int)(0.75 * data.rows());
+			timer.stop(phase);
+			phase = timer.start("copy");
+			Matrix trainFeatures = new Matrix(data, 0, 0, trainSize, data.cols() - 1);
+			Matrix trainLabels = new Matrix(data, 0, data.cols() - 1, trainSize, 1);
+			Matrix testFeatures = new Matrix(data, trainSize, 0, data.rows() - trainSize, data.cols() - 1);
+			Matrix testLabels = new Matrix(data, trainSize, data.cols() - 1, data.rows() - trainSize, 1);
+			timer.stop(phase);
+			LearningCurve curve = new LearningCurve(learnerName, parser.getLearnerParameters(), rand, numSizes);
+			phase = timer.start("train");
+			List<LearningCurve.Point> points = curve.run(trainFeatures, trainLabels, testFeatures, testLabels);
+			timer.stop(phase);
+			System.out.println(points.get(0).incremental
+				? "Each size extends the previous model with partialFit"
+				: "Each size is trained from scratch, sizes run concurrently");
+			LearningCurve.printTable(points, System.out);
+		}
+
+		if (parser.getPrintPhases())
+		{
+			System.out.println("\nTime spent in each phase:");
+			timer.printTable(System.out);
+		}
+		if (parser.getPhaseFile() != null)
+		{
+			timer.export(resolve(parser.getPhaseFile()));
+			System.out.println("Phase timings written to " + parser.getPhaseFile());
+		}
 	}
 
 	/**
 	 * Class for parsing out the command line arguments
 	 */
-	private class ArgParser {
+	class ArgParser {
 	
 		String arff;
 		String learner;
@@ -188,6 +579,17 @@ public class MLSystemManager {
 		String evalExtra;
 		boolean verbose;
 		boolean normalize;
+		boolean printPhases;
+		String phaseFile;
+		Long seed;
+		String modelOutput;
+		String modelInput;
+		String[] pipelineStages;
+		double maxHalfWidth = 0.01;
+		String cacheDirectory;
+		Long memoryBudget;
+		Double referenceScore;
+		Map<String, String> learnerParameters = new LinkedHashMap<String, String>();
 
 		//You can add more options for specific learning models if you wish
 		public ArgParser(String[] argv) {
@@ -202,6 +604,52 @@ public class MLSystemManager {
 			 		else if (argv[i].equals("-N"))
 			 		{
 			 			normalize = true;
+			 		}
+			 		else if (argv[i].equals("-T"))
+			 		{
+			 			printPhases = true;
+			 		}
+			 		else if (argv[i].equals("-O"))
+			 		{
+			 			phaseFile = argv[++i];
+			 		}
+			 		else if (argv[i].equals("-M"))
+			 		{
+			 			modelOutput = argv[++i];
+			 		}
+			 		else if (argv[i].equals("-I"))
+			 		{
+			 			modelInput = argv[++i];
+			 		}
+			 		else if (argv[i].equals("-X"))
+			 		{
+			 			pipelineStages = argv[++i].split(",");
+			 		}
+			 		else if (argv[i].equals("-B"))
+			 		{
+			 			memoryBudget = (long)(Double.parseDouble(argv[++i]) * 1024 * 1024);
+			 		}
+			 		else if (argv[i].equals("-C"))
+			 		{
+			 			cacheDirectory = argv[++i];
+			 		}
+			 		else if (argv[i].equals("-H"))
+			 		{
+			 			maxHalfWidth = Double.parseDouble(argv[++i]);
+			 		}
+			 		else if (argv[i].equals("-R"))
+			 		{
+			 			referenceScore = Double.parseDouble(argv[++i]);
+			 		}
+			 		else if (argv[i].equals("-S"))
+			 		{
+			 			seed = Long.parseLong(argv[++i]);
+			 		}
+			 		else if (argv[i].equals("-P"))
+			 		{
+			 			String setting = argv[++i];
+			 			int split = setting.indexOf('=');
+			 			learnerParameters.put(setting.substring(0, split), setting.substring(split + 1));
 			 		}
 						else if (argv[i].equals("-A"))
 						{
@@ -230,19 +678,37 @@ public class MLSystemManager {
 								//expecting the number of folds
 								evalExtra = argv[++i];
 							}
+							else if (argv[i].equals("adaptive"))
+							{
+								//expecting the largest number of folds to run
+								evalExtra = argv[++i];
+							}
+							else if (argv[i].equals("halving"))
+							{
+								//expecting the number of configurations to start with
+								evalExtra = argv[++i];
+							}
+							else if (argv[i].equals("curve"))
+							{
+								//expecting the number of training set sizes
+								evalExtra = argv[++i];
+							}
 							else if (!argv[i].equals("training"))
 							{
 								System.out.println("Invalid Evaluation Method: " + argv[i]);
-								System.exit(0);
+								quit();
 							}
 						}
 						else
 						{
 							System.out.println("Invalid parameter: " + argv[i]);
-							System.exit(0);
+							quit();
 						}
 			  	}
 		 
+				}
+				catch (UsageException e) {
+					throw e;
 				}
 				catch (Exception e) {
 					System.out.println("Usage:");
@@ -254,27 +720,51 @@ public class MLSystemManager {
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E training");
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E static [testARFF_File]");
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E random [%_ForTraining]");
-				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E cross [numOfFolds]\n");
-					System.exit(0);
+				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E cross [numOfFolds]");
+				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E adaptive [maxNumOfFolds]");
+				  	System.out.println("MLSystemManager -L neuralnet -A [ARFF_File] -E halving [numOfConfigurations]");
+				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E curve [numOfTrainingSetSizes]\n");
+					quit();
 				}
 				
-				if (arff == null || learner == null || evaluation == null)
+				if (arff == null || (learner == null && modelInput == null) || evaluation == null)
 				{
 					System.out.println("Usage:");
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E [evaluationMethod] {[extraParamters]} [OPTIONS]\n");
 					System.out.println("OPTIONS:");
 					System.out.println("-V Print the confusion matrix and learner accuracy on individual class values");
 					System.out.println("-N Use normalized data");
+					System.out.println("-T Print the wall time, CPU time and allocations of every phase");
+					System.out.println("-O [file.csv|file.json] Export the phase timings");
+					System.out.println("-S [seed] Seed the random number generator for repeatable runs");
+					System.out.println("-P [name=value] Set a learner parameter, may be repeated");
+					System.out.println("-M [modelFile] Save the trained model (training, static and random evaluations)");
+					System.out.println("-X [stage,stage,...] Load through a concurrent pipeline of normalize, onehot and quadratic stages (with -E training, single-pass learners such as knn train as its last stage)");
+					System.out.println("-B [megabytes] Report memory use, and keep datasets estimated over this size off the heap");
+					System.out.println("-C [directory] Keep cross-validation fold results in an on-disk cache and reuse them (needs -S)");
+					System.out.println("-H [halfWidth] Adaptive cross-validation stops once the 95% interval is this narrow (default 0.01)");
+					System.out.println("-R [score] Adaptive cross-validation stops once the learner is clearly worse than this (default: the baseline learner)");
+					System.out.println("-I [modelFile] Evaluate a saved model instead of training one (training and static evaluations)");
 					System.out.println();
 					System.out.println("Possible evaluation methods are:");
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E training");
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E static [testARFF_File]");
 					System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E random [%_ForTraining]");
-				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E cross [numOfFolds]\n");
-					System.exit(0);
+				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E cross [numOfFolds]");
+				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E adaptive [maxNumOfFolds]");
+				  	System.out.println("MLSystemManager -L neuralnet -A [ARFF_File] -E halving [numOfConfigurations]");
+				  	System.out.println("MLSystemManager -L [learningAlgorithm] -A [ARFF_File] -E curve [numOfTrainingSetSizes]\n");
+					quit();
 				}
 			}
 	 
+		// Ends the program, or only the current run when a daemon is hosting it
+		private void quit() {
+			if (exitOnUsageError)
+				System.exit(0);
+			throw new UsageException();
+		}
+
 		//The getter methods
 		public String getARFF(){ return arff; }	
 		public String getLearner(){ return learner; }	 
@@ -282,6 +772,17 @@ public class MLSystemManager {
 		public String getEvalParameter() { return evalExtra; }
 		public boolean getVerbose() { return verbose; } 
 		public boolean getNormalize() { return normalize; }
+		public boolean getPrintPhases() { return printPhases; }
+		public String getPhaseFile() { return phaseFile; }
+		public Long getSeed() { return seed; }
+		public String getModelOutput() { return modelOutput; }
+		public String getModelInput() { return modelInput; }
+		public String[] getPipelineStages() { return pipelineStages; }
+		public double getMaxHalfWidth() { return maxHalfWidth; }
+		public String getCacheDirectory() { return cacheDirectory; }
+		public Long getMemoryBudget() { return memoryBudget; }
+		public Double getReferenceScore() { return referenceScore; }
+		public Map<String, String> getLearnerParameters() { return learnerParameters; }
 	}
 
 	public static void main(String[] args) throws Exception
@@ -4,18 +4,23 @@
 // ----------------------------------------------------------------
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.TreeMap;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Iterator;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.lang.Exception;
 
 public class Matrix {
 	// Data
-	ArrayList< double[] > m_data;
+	List< double[] > m_data;
+	OffHeapRows m_offHeap; // The same list as m_data when the rows are kept outside the heap, otherwise null
 
 	// Meta-data
 	ArrayList< String > m_attr_name;
@@ -29,7 +34,10 @@ public class Matrix {
 
 	// Copies the specified portion of that matrix into this matrix
 	public Matrix(Matrix that, int rowStart, int colStart, int rowCount, int colCount) {
-		m_data = new ArrayList< double[] >();
+		if(that.m_offHeap != null)
+			useOffHeap(colCount);
+		else
+			m_data = new ArrayList< double[] >();
 		for(int j = 0; j < rowCount; j++) {
 			double[] rowSrc = that.row(rowStart + j);
 			double[] rowDest = new double[colCount];
@@ -47,6 +55,29 @@ public class Matrix {
 		}
 	}
 
+	// Copies the listed rows (in the order given) and the specified columns of that matrix into this matrix
+	public Matrix(Matrix that, int[] rowIndexes, int colStart, int colCount) {
+		if(that.m_offHeap != null)
+			useOffHeap(colCount);
+		else
+			m_data = new ArrayList< double[] >(rowIndexes.length);
+		for(int j = 0; j < rowIndexes.length; j++) {
+			double[] rowSrc = that.row(rowIndexes[j]);
+			double[] rowDest = new double[colCount];
+			for(int i = 0; i < colCount; i++)
+				rowDest[i] = rowSrc[colStart + i];
+			m_data.add(rowDest);
+		}
+		m_attr_name = new ArrayList<String>();
+		m_str_to_enum = new ArrayList< TreeMap<String, Integer> >();
+		m_enum_to_str = new ArrayList< TreeMap<Integer, String> >();
+		for(int i = 0; i < colCount; i++) {
+			m_attr_name.add(that.attrName(colStart + i));
+			m_str_to_enum.add(that.m_str_to_enum.get(colStart + i));
+			m_enum_to_str.add(that.m_enum_to_str.get(colStart + i));
+		}
+	}
+
 	// Adds a copy of the specified portion of that matrix to this matrix
 	public void add(Matrix that, int rowStart, int colStart, int rowCount) throws Exception {
 		if(colStart + cols() > that.cols())
@@ -64,8 +95,15 @@ public class Matrix {
 		}
 	}
 
+	// Keeps the rows outside the heap from now on (see OffHeapRows). Call it while the matrix has no rows.
+	void useOffHeap(int cols) {
+		m_offHeap = new OffHeapRows(cols);
+		m_data = m_offHeap;
+	}
+
 	// Resizes this matrix (and sets all attributes to be continuous)
 	public void setSize(int rows, int cols) {
+		m_offHeap = null;
 		m_data = new ArrayList< double[] >();
 		for(int j = 0; j < rows; j++) {
 			double[] row = new double[cols];
@@ -83,6 +121,12 @@ public class Matrix {
 
 	// Loads from an ARFF file
 	public void loadArff(String filename) throws Exception, FileNotFoundException {
+		loadArff(filename, false);
+	}
+
+	// Loads from an ARFF file, keeping the rows outside the heap if offHeap is set
+	public void loadArff(String filename, boolean offHeap) throws Exception, FileNotFoundException {
+		m_offHeap = null;
 		m_data = new ArrayList<double[]>();
 		m_attr_name = new ArrayList<String>();
 		m_str_to_enum = new ArrayList< TreeMap<String, Integer> >();
@@ -93,99 +137,146 @@ public class Matrix {
 			String line = s.nextLine().trim();
 			if (line.length() > 0 && line.charAt(0) != '%') {
 				if (!READDATA) {
-					
-					Scanner t = new Scanner(line);
-					String firstToken = t.next().toUpperCase();
-					
-					if (firstToken.equals("@RELATION")) {
-						String datasetName = t.nextLine();
+					READDATA = parseHeaderLine(line);
+					if (READDATA && offHeap)
+						useOffHeap(cols());
+				}
+				else {
+					m_data.add(parseRow(line));
+				}
+			}
+		}
+	}
+
+	// Reads one header line into the attribute lists. Returns true once the @DATA line is reached.
+	public boolean parseHeaderLine(String line) throws Exception {
+		Scanner t = new Scanner(line);
+		String firstToken = t.next().toUpperCase();
+		
+		if (firstToken.equals("@RELATION")) {
+			String datasetName = t.nextLine();
+		}
+		
+		if (firstToken.equals("@ATTRIBUTE")) {
+			TreeMap<String, Integer> ste = new TreeMap<String, Integer>();
+			m_str_to_enum.add(ste);
+			TreeMap<Integer, String> ets = new TreeMap<Integer, String>();
+			m_enum_to_str.add(ets);
+
+			Scanner u = new Scanner(line);
+			if (line.indexOf("'") != -1) u.useDelimiter("'");
+			u.next();
+			String attributeName = u.next();
+			if (line.indexOf("'") != -1) attributeName = "'" + attributeName + "'";
+			m_attr_name.add(attributeName);
+
+			int vals = 0;
+			String type = u.next().trim().toUpperCase();
+			if (type.equals("REAL") || type.equals("CONTINUOUS") || type.equals("INTEGER")) {
+			}
+			else {
+				try {
+					String values = line.substring(line.indexOf("{")+1,line.indexOf("}"));
+					Scanner v = new Scanner(values);
+					v.useDelimiter(",");
+					while (v.hasNext()) {
+						String value = v.next().trim();
+						if(value.length() > 0)
+						{
+							ste.put(value, new Integer(vals));
+							ets.put(new Integer(vals), value);
+							vals++;
+						}
 					}
+				}
+				catch (Exception e) {
+					throw new Exception("Error parsing line: " + line + "\n" + e.toString());
+				}
+			}
+		}
+		if (firstToken.equals("@DATA")) {
+			return true;
+		}
+		return false;
+	}
+
+	// Parses one comma separated data line, mapping nominal values through this matrix's dictionaries
+	public double[] parseRow(String line) throws Exception {
+		double[] newrow = new double[cols()];
+		int curPos = 0;
+
+		try {
+			Scanner t = new Scanner(line);
+			t.useDelimiter(",");
+			while (t.hasNext()) {
+				String textValue = t.next().trim();
+				//System.out.println(textValue);
+
+				if (textValue.length() > 0) {
+					double doubleValue;
+					int vals = m_enum_to_str.get(curPos).size();
 					
-					if (firstToken.equals("@ATTRIBUTE")) {
-						TreeMap<String, Integer> ste = new TreeMap<String, Integer>();
-						m_str_to_enum.add(ste);
-						TreeMap<Integer, String> ets = new TreeMap<Integer, String>();
-						m_enum_to_str.add(ets);
-
-						Scanner u = new Scanner(line);
-						if (line.indexOf("'") != -1) u.useDelimiter("'");
-						u.next();
-						String attributeName = u.next();
-						if (line.indexOf("'") != -1) attributeName = "'" + attributeName + "'";
-						m_attr_name.add(attributeName);
-
-						int vals = 0;
-						String type = u.next().trim().toUpperCase();
-						if (type.equals("REAL") || type.equals("CONTINUOUS") || type.equals("INTEGER")) {
-						}
-						else {
-							try {
-								String values = line.substring(line.indexOf("{")+1,line.indexOf("}"));
-								Scanner v = new Scanner(values);
-								v.useDelimiter(",");
-								while (v.hasNext()) {
-									String value = v.next().trim();
-									if(value.length() > 0)
-									{
-										ste.put(value, new Integer(vals));
-										ets.put(new Integer(vals), value);
-										vals++;
-									}
-								}
-							}
-							catch (Exception e) {
-								throw new Exception("Error parsing line: " + line + "\n" + e.toString());
-							}
-						}
+					//Missing instances appear in the dataset as a double defined as MISSING
+					if (textValue.equals("?")) {
+						doubleValue = MISSING;
 					}
-					if (firstToken.equals("@DATA")) {
-						READDATA = true;
+					// Continuous values appear in the instance vector as they are
+					else if (vals == 0) {
+						doubleValue = Double.parseDouble(textValue);
 					}
-				}
-				else {
-					double[] newrow = new double[cols()];
-					int curPos = 0;
-
-					try {
-						Scanner t = new Scanner(line);
-						t.useDelimiter(",");
-						while (t.hasNext()) {
-							String textValue = t.next().trim();
-							//System.out.println(textValue);
-
-							if (textValue.length() > 0) {
-								double doubleValue;
-								int vals = m_enum_to_str.get(curPos).size();
-								
-								//Missing instances appear in the dataset as a double defined as MISSING
-								if (textValue.equals("?")) {
-									doubleValue = MISSING;
-								}
-								// Continuous values appear in the instance vector as they are
-								else if (vals == 0) {
-									doubleValue = Double.parseDouble(textValue);
-								}
-								// Discrete values appear as an index to the "name" 
-								// of that value in the "attributeValue" structure
-								else {
-									doubleValue = m_str_to_enum.get(curPos).get(textValue);
-									if (doubleValue == -1) {
-										throw new Exception("Error parsing the value '" + textValue + "' on line: " + line);
-									}
-								}
-								
-								newrow[curPos] = doubleValue;
-								curPos++;
-							}
+					// Discrete values appear as an index to the "name" 
+					// of that value in the "attributeValue" structure
+					else {
+						doubleValue = m_str_to_enum.get(curPos).get(textValue);
+						if (doubleValue == -1) {
+							throw new Exception("Error parsing the value '" + textValue + "' on line: " + line);
 						}
 					}
-					catch(Exception e) {
-						throw new Exception("Error parsing line: " + line + "\n" + e.toString());
-					}
-					m_data.add(newrow);
+					
+					newrow[curPos] = doubleValue;
+					curPos++;
 				}
 			}
 		}
+		catch(Exception e) {
+			throw new Exception("Error parsing line: " + line + "\n" + e.toString());
+		}
+		return newrow;
+	}
+
+	// Writes the attribute names and nominal dictionaries (not the rows)
+	public void writeSchema(DataOutputStream out) throws IOException {
+		out.writeInt(cols());
+		for(int i = 0; i < cols(); i++) {
+			out.writeUTF(attrName(i));
+			int vals = valueCount(i);
+			out.writeInt(vals);
+			for(int j = 0; j < vals; j++)
+				out.writeUTF(attrValue(i, j));
+		}
+	}
+
+	// Reads a schema written by writeSchema, leaving this matrix with no rows
+	public void readSchema(DataInputStream in) throws IOException {
+		m_offHeap = null;
+		m_data = new ArrayList< double[] >();
+		m_attr_name = new ArrayList<String>();
+		m_str_to_enum = new ArrayList< TreeMap<String, Integer> >();
+		m_enum_to_str = new ArrayList< TreeMap<Integer, String> >();
+		int cols = in.readInt();
+		for(int i = 0; i < cols; i++) {
+			m_attr_name.add(in.readUTF());
+			TreeMap<String, Integer> ste = new TreeMap<String, Integer>();
+			TreeMap<Integer, String> ets = new TreeMap<Integer, String>();
+			int vals = in.readInt();
+			for(int j = 0; j < vals; j++) {
+				String value = in.readUTF();
+				ste.put(value, j);
+				ets.put(j, value);
+			}
+			m_str_to_enum.add(ste);
+			m_enum_to_str.add(ets);
+		}
 	}
 
 	// Returns the number of rows in the matrix
@@ -197,11 +288,20 @@ public class Matrix {
 	// Returns the specified row
 	double[] row(int r) { return m_data.get(r); }
 
+	// The same, copying an off-heap row into scratch instead of a new array. Only for reading, and only until the
+	// next call with the same scratch.
+	double[] row(int r, double[] scratch) { return m_offHeap != null ? m_offHeap.get(r, scratch) : m_data.get(r); }
+
 	// Returns the element at the specified row and column
-	double get(int r, int c) { return m_data.get(r)[c]; }
+	double get(int r, int c) { return m_offHeap != null ? m_offHeap.get(r, c) : m_data.get(r)[c]; }
 
 	// Sets the value at the specified row and column
-	void set(int r, int c, double v) { row(r)[c] = v; }
+	void set(int r, int c, double v) {
+		if(m_offHeap != null)
+			m_offHeap.set(r, c, v);
+		else
+			row(r)[c] = v;
+	}
 
 	// Returns the name of the specified attribute
 	String attrName(int col) { return m_attr_name.get(col); }
@@ -220,24 +320,26 @@ public class Matrix {
 	void shuffle(Random rand) {
 		for(int n = rows(); n > 0; n--) {
 			int i = rand.nextInt(n);
-			double[] tmp = row(n - 1);
-			m_data.set(n - 1, row(i));
-			m_data.set(i, tmp);
+			swapRows(n - 1, i);
+		}
+	}
+
+	private void swapRows(int a, int b) {
+		if(m_offHeap != null) {
+			m_offHeap.swap(a, b);
+			return;
 		}
+		double[] tmp = row(a);
+		m_data.set(a, row(b));
+		m_data.set(b, tmp);
 	}
 
 	// Shuffles the row order with a buddy matrix 
 	void shuffle(Random rand, Matrix buddy) {
 		for (int n = rows(); n > 0; n--) {
 			int i = rand.nextInt(n);
-			double[] tmp = row(n - 1);
-			m_data.set(n - 1, row(i));
-			m_data.set(i, tmp);
-
-
-			double[] tmp1 = buddy.row(n - 1);
-			buddy.m_data.set(n - 1, buddy.row(i));
-			buddy.m_data.set(i, tmp1);
+			swapRows(n - 1, i);
+			buddy.swapRows(n - 1, i);
 		}
 	}
 
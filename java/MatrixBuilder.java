@@ -0,0 +1,37 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+// Last stage of a RowPipeline that collects every row into a Matrix with the given schema.
+public class MatrixBuilder implements Flow.Subscriber<double[]> {
+
+  Matrix matrix;
+  Flow.Subscription subscription;
+  CompletableFuture<Matrix> result = new CompletableFuture<Matrix>();
+
+  public MatrixBuilder(Matrix schema) {
+    matrix = new Matrix(schema, 0, 0, 0, schema.cols());
+  }
+
+  // Completes once the last row has arrived
+  public CompletableFuture<Matrix> getResult() {
+    return result;
+  }
+
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(1);
+  }
+
+  public void onNext(double[] row) {
+    matrix.m_data.add(row);
+    subscription.request(1);
+  }
+
+  public void onError(Throwable error) {
+    result.completeExceptionally(error);
+  }
+
+  public void onComplete() {
+    result.complete(matrix);
+  }
+}
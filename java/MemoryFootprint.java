@@ -0,0 +1,94 @@
+// Estimates of how much memory datasets and trained models take, assuming a 64-bit JVM with compressed
+// references (16 byte array headers, 4 byte references, 8 byte alignment). They are estimates of retained size,
+// close enough to decide before loading whether a dataset fits the budget.
+public class MemoryFootprint {
+
+  static final long ARRAY_HEADER = 16;
+  static final long REFERENCE = 4;
+  static final long LIST_OVERHEAD = 24 + ARRAY_HEADER; // ArrayList object and its backing array's header
+  static final long DICTIONARY_ENTRY = 2 * 40 + 16 + 56; // An entry in each TreeMap, the Integer and a short String
+
+  public static class Estimate {
+    long rows;
+    int cols;
+    long nominalValues;
+    long heapBytes; // As a Matrix of double[] rows
+    long offHeapBytes; // As OffHeapRows
+  }
+
+  static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  static long doubleArrayBytes(long length) {
+    return align(ARRAY_HEADER + 8 * length);
+  }
+
+  static long dictionaryBytes(long nominalValues) {
+    return nominalValues * DICTIONARY_ENTRY;
+  }
+
+  // A Matrix with one double[] per row
+  static long heapBytes(long rows, int cols, long nominalValues) {
+    return align(LIST_OVERHEAD + REFERENCE * rows) + rows * doubleArrayBytes(cols) + dictionaryBytes(nominalValues);
+  }
+
+  // OffHeapRows packs the values with no per-row overhead, rounded up to whole buffers
+  static long offHeapBytes(long rows, int cols, long nominalValues) {
+    OffHeapRows layout = new OffHeapRows(cols);
+    long chunks = (rows + layout.rowsPerChunk - 1) / layout.rowsPerChunk;
+    return chunks * layout.rowsPerChunk * cols * 8 + dictionaryBytes(nominalValues);
+  }
+
+  static long nominalValues(Matrix schema) {
+    long count = 0;
+    for (int i = 0; i < schema.cols(); ++i) {
+      count += schema.valueCount(i);
+    }
+    return count;
+  }
+
+  // Reads only the header and counts the data lines, which is much cheaper than parsing them
+  public static Estimate estimateArff(String fileName) throws Exception {
+    ArffReader reader = new ArffReader(fileName);
+    try {
+      Estimate estimate = new Estimate();
+      estimate.cols = reader.getSchema().cols();
+      estimate.nominalValues = nominalValues(reader.getSchema());
+      estimate.rows = reader.countRows();
+      estimate.heapBytes = heapBytes(estimate.rows, estimate.cols, estimate.nominalValues);
+      estimate.offHeapBytes = offHeapBytes(estimate.rows, estimate.cols, estimate.nominalValues);
+      return estimate;
+    } finally {
+      reader.close();
+    }
+  }
+
+  // Retained size of a loaded matrix. Dictionaries shared with the matrix it was copied from are counted again.
+  public static long matrixBytes(Matrix matrix) {
+    if (matrix == null) {
+      return 0;
+    }
+    if (matrix.m_offHeap != null) {
+      return matrix.m_offHeap.capacityBytes() + dictionaryBytes(nominalValues(matrix));
+    }
+    return heapBytes(matrix.rows(), matrix.cols(), nominalValues(matrix));
+  }
+
+  // What the perceptron's quadratic expansion (every feature, every product of two features and the bias)
+  // would take if it were kept for all rows instead of being rebuilt for each row
+  public static long quadraticFeatureBytes(long rows, int inputs) {
+    long weights = inputs + (long) inputs * (inputs + 1) / 2 + 1;
+    return align(LIST_OVERHEAD + REFERENCE * rows) + rows * doubleArrayBytes(weights);
+  }
+
+  public static String format(long bytes) {
+    if (bytes < 0) {
+      return "unknown";
+    }
+    if (bytes < 1 << 20) {
+      return String.format("%.1f KB", bytes / 1024.0);
+    }
+    return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+  }
+}
@@ -0,0 +1,63 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+// Binary model files: a header (magic number, format version, learner name), the feature and label schemas
+// with their nominal dictionaries, then whatever the learner's writeModel produces.
+public class ModelIO {
+
+  static final int MAGIC = 0x4D4C4D44; // "MLMD"
+  static final int FORMAT_VERSION = 1;
+  static final int BUFFER_SIZE = 1 << 16;
+
+  // A loaded learner together with the schemas it was trained on, which are needed to parse new rows
+  public static class Model {
+    String learnerName;
+    SupervisedLearner learner;
+    Matrix featureSchema;
+    Matrix labelSchema;
+  }
+
+  public static void save(String fileName, String learnerName, SupervisedLearner learner, Matrix features, Matrix labels) throws Exception {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(learnerName);
+      features.writeSchema(out);
+      labels.writeSchema(out);
+      learner.writeModel(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  public static Model load(String fileName, Random rand) throws Exception {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new Exception(fileName + " is not a saved model");
+      }
+      int version = in.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new Exception(fileName + " has model format version " + version + ", expected " + FORMAT_VERSION);
+      }
+
+      Model model = new Model();
+      model.learnerName = in.readUTF();
+      model.featureSchema = new Matrix();
+      model.featureSchema.readSchema(in);
+      model.labelSchema = new Matrix();
+      model.labelSchema.readSchema(in);
+      model.learner = new MLSystemManager().getLearner(model.learnerName, rand);
+      model.learner.readModel(in);
+      return model;
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -42,6 +42,17 @@ public class NetworkLayer {
     this.layerIndex = layerIndex;
   }
 
+  // Restores a layer from saved weights, (numNodes + 1 for the bias) x numNextNodes
+  public NetworkLayer(Random rand, int layerIndex, double[][] weights) {
+    this.weights = weights;
+    this.numRows = weights.length;
+    this.numColumns = weights[0].length;
+    this.deltaWeights = new double[numRows][numColumns];
+    this.outputData = new double[numColumns + 1]; // to insert the bias value
+    this.rand = rand;
+    this.layerIndex = layerIndex;
+  }
+
   // Input Data is multiplied by the weight matrix to get the resulting output values
   // This includes applying the output values
   public double[] getOutputData(double[] inputData) throws Exception {
@@ -56,20 +67,32 @@ public class NetworkLayer {
       throw new Exception("Input size invalid for OUTPUT DATA: (numInputs, numRows) -> (" + inputSize + ", " + numRows + ") on layer index " + layerIndex);
      } else {
       //  Be careful not to modify the outputData after the return statement, since this value is needed for further computation in the object
+        computeOutputData(inputData, outputData);
+        return outputData;
+     }
+  }
 
-        for (int j = 0; j < numColumns; ++j) {
-          double sum = 0;
-          for (int i = 0; i < numRows; ++i) {
-            sum += inputData[i] * weights[i][j];
-          }
-          outputData[j] = getActivationValue(sum);
-        }
+  // Same as getOutputData, but leaves the layer untouched so that several threads can predict with it at once
+  public double[] predictOutputData(double[] inputData) throws Exception {
+    if (inputData.length != numRows) {
+      throw new Exception("Input size invalid for OUTPUT DATA: (numInputs, numRows) -> (" + inputData.length + ", " + numRows + ") on layer index " + layerIndex);
+    }
+    double[] result = new double[numColumns + 1];
+    computeOutputData(inputData, result);
+    return result;
+  }
 
-        // Add the bias value to the output
-        outputData[numColumns] = 1;
+  private void computeOutputData(double[] inputData, double[] result) {
+    for (int j = 0; j < numColumns; ++j) {
+      double sum = 0;
+      for (int i = 0; i < numRows; ++i) {
+        sum += inputData[i] * weights[i][j];
+      }
+      result[j] = getActivationValue(sum);
+    }
 
-        return outputData;
-     }
+    // Add the bias value to the output
+    result[numColumns] = 1;
   }
 
   public double[] updateWeightsAndGetDeltaData(double[] currentDeltaData) throws Exception {
@@ -2,6 +2,8 @@ import java.util.ArrayList;
 import java.util.Random;
 import java.util.List;
 import java.io.PrintWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 
@@ -20,6 +22,8 @@ public class NeuralNet extends SupervisedLearner {
   int epochWindow = 10; // How many epochs will be run before checking stopping criteria again
   double minAccuracyImprovement = 0.0001;
   long maxRuntimeSeconds = 30; // Max seconds in which the neural net will run
+  double learningRate = 0.1;
+  double momentumValue = 0.9;
 
   Matrix validationFeatures;
   Matrix validationLabels;
@@ -50,35 +54,7 @@ public class NeuralNet extends SupervisedLearner {
 
     long startMilliseconds = System.currentTimeMillis();
 
-    int numInputs = features.row(0).length;
-    int numClasses = labels.valueCount(0);
-
-    numInitialWeights = numInputs + 1;
-
-    int trainingLength = features.rows();
-
-    if (numClasses > 1) {
-      isContinuous = false;
-      numOutputs = numClasses;
-    } else {
-      // If continuous, then there should only be one output of data
-      isContinuous = true;
-      numOutputs = 1;
-    }
-      
-    int numCurrentNodes = 0;
-    int numNextNodes = numInputs; // No qudratic outputs
-
-    // Create the necessary hidden layers for the network
-    for (int i = 0; i < numTotalLayers; ++i) {
-      numCurrentNodes = numNextNodes;
-      if (i == numTotalLayers - 1) {
-        numNextNodes = numOutputs;
-      } else {
-        numNextNodes = numPerceptronsPerLayer[i];
-      }
-      networkLayers[i] = new NetworkLayer(rand, i, numCurrentNodes, numNextNodes);
-    }
+    initializeNetwork(features, labels);
 
     int epochCount = 0;
     double currentAccuracy;
@@ -103,29 +79,11 @@ public class NeuralNet extends SupervisedLearner {
         }
       }
 
-      features.shuffle(rand, labels);
-        
-      if (debug) {
-        System.out.println("---------------------Epoch " + epochCount + "------------------");
-      }
-        
-      for (int i = 0; i < trainingLength; ++i) {
-        double[] currentData = new double[numInitialWeights];
-
-        // Initialize the current data to be equivalent to the features
-        for (int j = 0; j < numInitialWeights - 1; ++j) {
-          currentData[j] = features.row(i)[j];
-        }
-
-        // Add the bias input value
-        currentData[numInitialWeights - 1] = 1;
-
-        if (debug) {
-          System.out.println("-------------------------- NEW TRAINING SET (" + (i + 1) + " of " + trainingLength + ") -> Forward propagating... ----------------------");
-        }
-
-        trainNetwork(currentData, labels.get(i, 0), isContinuous);
-      }
+      TrainingEvents.Epoch epochEvent = new TrainingEvents.Epoch();
+      epochEvent.begin();
+      long epochStart = System.nanoTime();
+      trainEpoch(features, labels);
+      long epochNanos = System.nanoTime() - epochStart;
 
       validationFeatures.shuffle(rand, validationLabels);
       currentAccuracy = measureAccuracy(validationFeatures, validationLabels, null);
@@ -133,6 +91,15 @@ public class NeuralNet extends SupervisedLearner {
 
       ++epochCount;
 
+      if (epochEvent.shouldCommit()) {
+        epochEvent.learner = "neuralnet";
+        epochEvent.epoch = epochCount;
+        epochEvent.samples = features.rows();
+        epochEvent.samplesPerSecond = features.rows() / (epochNanos / 1e9);
+        epochEvent.accuracy = currentAccuracy;
+        epochEvent.commit();
+      }
+
       // Accuracy values are MSE with continuous data, % average accuracy when nominal output
 
       // Used for exporting to gif animation
@@ -147,6 +114,158 @@ public class NeuralNet extends SupervisedLearner {
     
   }
 
+  // Builds fresh layers with random weights, sized by the features and labels given
+  public void initializeNetwork(Matrix features, Matrix labels) {
+
+    int numInputs = features.cols();
+    int numClasses = labels.valueCount(0);
+
+    numInitialWeights = numInputs + 1;
+
+    if (numClasses > 1) {
+      isContinuous = false;
+      numOutputs = numClasses;
+    } else {
+      // If continuous, then there should only be one output of data
+      isContinuous = true;
+      numOutputs = 1;
+    }
+      
+    int numCurrentNodes = 0;
+    int numNextNodes = numInputs; // No qudratic outputs
+
+    // Create the necessary hidden layers for the network
+    for (int i = 0; i < numTotalLayers; ++i) {
+      numCurrentNodes = numNextNodes;
+      if (i == numTotalLayers - 1) {
+        numNextNodes = numOutputs;
+      } else {
+        numNextNodes = numPerceptronsPerLayer[i];
+      }
+      networkLayers[i] = new NetworkLayer(rand, i, numCurrentNodes, numNextNodes);
+      networkLayers[i].learningRate = learningRate;
+      networkLayers[i].momentumValue = momentumValue;
+    }
+  }
+
+  // Runs a single epoch of backpropagation, continuing from the current weights
+  public void trainEpoch(Matrix features, Matrix labels) throws Exception {
+
+    features.shuffle(rand, labels);
+        
+    if (debug) {
+      System.out.println("---------------------Epoch---------------------");
+    }
+
+    partialFit(features, labels);
+  }
+
+  @Override
+  public boolean supportsPartialFit() {
+    return true;
+  }
+
+  @Override
+  public void initialize(Matrix featureSchema, Matrix labelSchema) throws Exception {
+    initializeNetwork(featureSchema, labelSchema);
+  }
+
+  // Backpropagates each row once, in the order given, continuing from the current weights and momentum.
+  // Call it again with the same batch to run more epochs over it.
+  @Override
+  public void partialFit(Matrix features, Matrix labels) throws Exception {
+
+    if (networkLayers[0] == null) {
+      throw new Exception("initialize must be called before partialFit");
+    }
+
+    int trainingLength = features.rows();
+
+    for (int i = 0; i < trainingLength; ++i) {
+      double[] currentData = new double[numInitialWeights];
+
+      // Initialize the current data to be equivalent to the features
+      double[] row = features.row(i);
+      for (int j = 0; j < numInitialWeights - 1; ++j) {
+        currentData[j] = row[j];
+      }
+
+      // Add the bias input value
+      currentData[numInitialWeights - 1] = 1;
+
+      if (debug) {
+        System.out.println("-------------------------- NEW TRAINING SET (" + (i + 1) + " of " + trainingLength + ") -> Forward propagating... ----------------------");
+      }
+
+      trainNetwork(currentData, labels.get(i, 0), isContinuous);
+    }
+  }
+
+  @Override
+  public void setParameter(String name, String value) throws Exception {
+    if (name.equals("hiddenNodes")) {
+      // Comma separated node counts, one entry per hidden layer (e.g. "8,4")
+      String[] layerSizes = value.split(",");
+      numHiddenLayers = layerSizes.length;
+      numTotalLayers = numHiddenLayers + 1;
+      numPerceptronsPerLayer = new int[numHiddenLayers];
+      for (int i = 0; i < numHiddenLayers; ++i) {
+        numPerceptronsPerLayer[i] = Integer.parseInt(layerSizes[i].trim());
+      }
+      networkLayers = new NetworkLayer[numTotalLayers];
+    } else if (name.equals("learningRate")) {
+      learningRate = Double.parseDouble(value);
+    } else if (name.equals("momentum")) {
+      momentumValue = Double.parseDouble(value);
+    } else if (name.equals("minEpochs")) {
+      minEpochs = Integer.parseInt(value);
+    } else if (name.equals("maxRuntimeSeconds")) {
+      maxRuntimeSeconds = Long.parseLong(value);
+    } else {
+      super.setParameter(name, value);
+    }
+  }
+
+  @Override
+  public void writeModel(DataOutputStream out) throws Exception {
+    out.writeInt(numInitialWeights);
+    out.writeBoolean(isContinuous);
+    out.writeInt(numOutputs);
+    out.writeInt(numTotalLayers);
+    for (NetworkLayer layer : networkLayers) {
+      out.writeInt(layer.numRows);
+      out.writeInt(layer.numColumns);
+      for (int i = 0; i < layer.numRows; ++i) {
+        for (int j = 0; j < layer.numColumns; ++j) {
+          out.writeDouble(layer.weights[i][j]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void readModel(DataInputStream in) throws Exception {
+    numInitialWeights = in.readInt();
+    isContinuous = in.readBoolean();
+    numOutputs = in.readInt();
+    numTotalLayers = in.readInt();
+    numHiddenLayers = numTotalLayers - 1;
+    numPerceptronsPerLayer = new int[numHiddenLayers];
+    networkLayers = new NetworkLayer[numTotalLayers];
+    for (int layer = 0; layer < numTotalLayers; ++layer) {
+      double[][] weights = new double[in.readInt()][in.readInt()];
+      for (int i = 0; i < weights.length; ++i) {
+        for (int j = 0; j < weights[i].length; ++j) {
+          weights[i][j] = in.readDouble();
+        }
+      }
+      if (layer < numHiddenLayers) {
+        numPerceptronsPerLayer[layer] = weights[0].length;
+      }
+      networkLayers[layer] = new NetworkLayer(rand, layer, weights);
+    }
+  }
+
   private boolean isImprovedOverWindow(double currentAccuracy, double bestAccuracy, double minAccuracyImprovement, int epochCount) {
     if (epochCount % epochWindow == 0) {
       if ((isContinuous && currentAccuracy < bestAccuracy - minAccuracyImprovement) || (!isContinuous && currentAccuracy > bestAccuracy + minAccuracyImprovement)) {
@@ -255,7 +374,7 @@ public class NeuralNet extends SupervisedLearner {
 
     for (int i = 0; i < numTotalLayers; ++i) {
       NetworkLayer currentLayer = networkLayers[i];
-      double[] nextOutputData = currentLayer.getOutputData(currentInputData);
+      double[] nextOutputData = currentLayer.predictOutputData(currentInputData);
       currentInputData = nextOutputData;
     }
 
@@ -0,0 +1,62 @@
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Scales continuous feature columns into [0, 1] with ranges given up front (see columnRanges), since a streaming
+// stage cannot look at the whole column first. Finding those ranges takes a full pass over the file before the
+// first row is published, so a pipeline with this stage reads its input twice and does not start streaming until
+// the first read is over. A column with a single value is scaled to 0.
+public class NormalizeTransform extends RowTransform {
+
+  double[] min;
+  double[] max;
+
+  public NormalizeTransform(Matrix inputSchema, double[] min, double[] max, Executor executor, int bufferSize) {
+    super(inputSchema, executor, bufferSize);
+    this.min = min;
+    this.max = max;
+    this.outputSchema = inputSchema;
+  }
+
+  // Min and max of every column the given stages produce, from a pass over the whole file through those stages on
+  // the calling thread, so a normalize after onehot or quadratic sees the columns it will actually be given
+  public static double[][] columnRanges(String fileName, List<RowTransform> earlierStages) throws Exception {
+    ArffReader reader = new ArffReader(fileName);
+    int cols = earlierStages.isEmpty() ? reader.getSchema().cols() : earlierStages.get(earlierStages.size() - 1).getOutputSchema().cols();
+    double[] min = new double[cols];
+    double[] max = new double[cols];
+    for (int i = 0; i < cols; ++i) {
+      min[i] = Matrix.MISSING;
+      max[i] = Matrix.MISSING;
+    }
+
+    double[] row;
+    while ((row = reader.nextRow()) != null) {
+      for (RowTransform stage : earlierStages) {
+        row = stage.transform(row);
+      }
+      for (int i = 0; i < cols; ++i) {
+        double v = row[i];
+        if (v != Matrix.MISSING) {
+          if (min[i] == Matrix.MISSING || v < min[i]) {
+            min[i] = v;
+          }
+          if (max[i] == Matrix.MISSING || v > max[i]) {
+            max[i] = v;
+          }
+        }
+      }
+    }
+    reader.close();
+    return new double[][]{min, max};
+  }
+
+  // Same rule as Matrix.normalize: every continuous column, missing values left alone
+  public double[] transform(double[] row) {
+    for (int i = 0; i < row.length; ++i) {
+      if (inputSchema.valueCount(i) == 0 && row[i] != Matrix.MISSING) {
+        row[i] = max[i] > min[i] ? (row[i] - min[i]) / (max[i] - min[i]) : 0.0;
+      }
+    }
+    return row;
+  }
+}
@@ -0,0 +1,107 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+// Rows of a Matrix kept outside the Java heap, packed back to back in direct buffers with no per-row object
+// overhead. Used when a dataset would not fit the heap budget (see MemoryFootprint). get copies a row out and
+// set copies one in, so a row returned by Matrix.row is a snapshot and changes have to go through Matrix.set.
+public class OffHeapRows extends AbstractList<double[]> implements RandomAccess {
+
+  static final int MAX_CHUNK_DOUBLES = 1 << 20; // 8 MB per buffer
+  static final int MAX_ROWS_PER_CHUNK = 4096; // Keeps the buffers of small matrices (test folds, labels) small
+
+  int cols;
+  int rowsPerChunk;
+  int size;
+  ArrayList<DoubleBuffer> chunks = new ArrayList<DoubleBuffer>();
+
+  public OffHeapRows(int cols) {
+    this.cols = cols;
+    this.rowsPerChunk = Math.max(1, Math.min(MAX_ROWS_PER_CHUNK, MAX_CHUNK_DOUBLES / Math.max(cols, 1)));
+  }
+
+  private DoubleBuffer chunk(int row) {
+    return chunks.get(row / rowsPerChunk);
+  }
+
+  private int offset(int row) {
+    return (row % rowsPerChunk) * cols;
+  }
+
+  // A view of the row's chunk positioned at the row, for the relative bulk get and put. Each caller gets its own
+  // position, so threads reading different rows of a chunk do not disturb each other.
+  private DoubleBuffer at(int row) {
+    DoubleBuffer view = chunk(row).duplicate();
+    view.position(offset(row));
+    return view;
+  }
+
+  private void checkIndex(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double[] get(int row) {
+    checkIndex(row);
+    double[] values = new double[cols];
+    at(row).get(values, 0, cols);
+    return values;
+  }
+
+  // Copies the values in. Returns null rather than a copy of the old row, which no caller needs.
+  public double[] set(int row, double[] values) {
+    checkIndex(row);
+    at(row).put(values, 0, cols);
+    return null;
+  }
+
+  public boolean add(double[] values) {
+    if (size == chunks.size() * rowsPerChunk) {
+      chunks.add(ByteBuffer.allocateDirect(rowsPerChunk * cols * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer());
+    }
+    ++size;
+    at(size - 1).put(values, 0, cols);
+    return true;
+  }
+
+  // Keeps the buffers for reuse
+  public void clear() {
+    size = 0;
+  }
+
+  // Copies a row into the given array instead of a new one
+  public double[] get(int row, double[] values) {
+    checkIndex(row);
+    at(row).get(values, 0, cols);
+    return values;
+  }
+
+  public double get(int row, int col) {
+    checkIndex(row);
+    return chunk(row).get(offset(row) + col);
+  }
+
+  public void set(int row, int col, double value) {
+    checkIndex(row);
+    chunk(row).put(offset(row) + col, value);
+  }
+
+  public void swap(int first, int second) {
+    double[] values = get(first);
+    set(first, get(second));
+    set(second, values);
+  }
+
+  // Bytes held in direct buffers
+  public long capacityBytes() {
+    return (long) chunks.size() * rowsPerChunk * cols * 8;
+  }
+}
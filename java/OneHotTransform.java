@@ -0,0 +1,44 @@
+import java.util.concurrent.Executor;
+
+// Replaces each nominal feature with one 0/1 column per value (all zeros when missing).
+// Continuous features and the label column pass through unchanged.
+public class OneHotTransform extends RowTransform {
+
+  int[] outputStart; // First output column of each input feature
+
+  public OneHotTransform(Matrix inputSchema, Executor executor, int bufferSize) {
+    super(inputSchema, executor, bufferSize);
+
+    int numFeatures = inputSchema.cols() - 1;
+    outputStart = new int[numFeatures];
+    int cols = 0;
+    for (int i = 0; i < numFeatures; ++i) {
+      outputStart[i] = cols;
+      cols += Math.max(1, inputSchema.valueCount(i));
+    }
+
+    outputSchema = schemaWithLabel(cols + 1);
+    for (int i = 0; i < numFeatures; ++i) {
+      int vals = inputSchema.valueCount(i);
+      if (vals == 0) {
+        outputSchema.setAttrName(outputStart[i], inputSchema.attrName(i));
+      }
+      for (int v = 0; v < vals; ++v) {
+        outputSchema.setAttrName(outputStart[i] + v, inputSchema.attrName(i) + "=" + inputSchema.attrValue(i, v));
+      }
+    }
+  }
+
+  public double[] transform(double[] row) {
+    double[] output = new double[outputSchema.cols()];
+    for (int i = 0; i < outputStart.length; ++i) {
+      if (inputSchema.valueCount(i) == 0) {
+        output[outputStart[i]] = row[i];
+      } else if (row[i] != Matrix.MISSING) {
+        output[outputStart[i] + (int) row[i]] = 1.0;
+      }
+    }
+    output[output.length - 1] = row[row.length - 1];
+    return output;
+  }
+}
@@ -4,7 +4,6 @@
 // ----------------------------------------------------------------
 
 import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * For nominal labels, this model simply returns the majority class. For
@@ -14,9 +13,9 @@ import java.util.Random;
  */
 public class Perceptron {
 
-	Random rand;
 	double learningRate;
 	double[] weights;
+	int offset; // Of this perceptron's weights in the array, which a PerceptronWeights shares between classes
 	int numWeights;
 
 	int classNumber; // Ranges from 1 to n
@@ -26,18 +25,14 @@ public class Perceptron {
 	boolean debug = false;
   boolean printWeights = false;
 
-	public Perceptron(Random rand, double learningRate, int numWeights, int classNumber, String className) {
-		this.rand = rand;
-		this.learningRate = learningRate;
-		this.weights = new double[numWeights];
-    this.numWeights = numWeights;
+	// A view of one class's weights in a learner's shared weight matrix
+	public Perceptron(PerceptronWeights matrix, int classNumber, String className) {
+		this.learningRate = matrix.learningRate;
+		this.weights = matrix.weights;
+		this.offset = matrix.offset(classNumber);
+		this.numWeights = matrix.numWeights;
 		this.classNumber = classNumber;
 		this.className = className;
-
-		//Initialize weights to random values between -1 and 1
-		for (int i = 0; i < numWeights; ++i) {
-			this.weights[i] = -1.0 + rand.nextInt(2);
-		}
 	}
 
 	// Preforms one epoch of training on the dataset
@@ -46,11 +41,11 @@ public class Perceptron {
 		double net = 0;
 
 		for (int j = 0; j < currentData.length; ++j) {
-			net += currentData[j] * weights[j];
+			net += currentData[j] * weights[offset + j];
 		}
 
 		// Then add the bias into the perceptron
-		net += weights[numWeights - 1];
+		net += weights[offset + numWeights - 1];
 
 		double currentTarget;
 		double output;
@@ -77,8 +72,8 @@ public class Perceptron {
 			}
 		  System.out.print("| ");
 
-			for (int j = 0; j < weights.length; ++j) {
-				System.out.print(weights[j] + ", ");
+			for (int j = 0; j < numWeights; ++j) {
+				System.out.print(weights[offset + j] + ", ");
 			}
 
 			System.out.print("| " + currentTarget + " | " + output + " | ");
@@ -92,7 +87,7 @@ public class Perceptron {
 				if (debug) {
 					System.out.print(change + ", ");
 				}
-				weights[j] += change;
+				weights[offset + j] += change;
 			}
 
 			double biasChange = learningRate * (currentTarget - output);
@@ -101,7 +96,7 @@ public class Perceptron {
 			}
 			// Change the bias weight
 			weightChange += Math.abs(biasChange);
-			weights[weights.length - 1] = biasChange;
+			weights[offset + numWeights - 1] = biasChange;
 		} else {
 			// DONT Change the weights
 			if (debug) {
@@ -117,7 +112,7 @@ public class Perceptron {
       System.out.print("Perceptron " + classNumber + " (" + className + ") weights: | ");
 
 			for (int j = 0; j < currentData.length; ++j) {
-				System.out.print(weights[j] + ", ");
+				System.out.print(weights[offset + j] + ", ");
 			}
 
       System.out.println();
@@ -129,11 +124,11 @@ public class Perceptron {
 		double net = 0.0;
 
 		for (int i = 0; i < features.length; ++i) {
-			net += features[i] * weights[i];
+			net += features[i] * weights[offset + i];
 		}
 
 		// Then add the bias into the perceptron
-		net += weights[numWeights - 1];
+		net += weights[offset + numWeights - 1];
 		return net;
 	}
 
@@ -0,0 +1,172 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+
+// Deterministic checks of the perceptron's equivalences: a saved and loaded model predicts as the trained one,
+// sparse and dense inputs train the same weights, and so do one and several class threads. Models are compared
+// by the bytes writeModel produces (or, for sparse against dense, by their weights), so "the same" means bit
+// for bit. Exits with status 1 if any check fails.
+//
+// java PerceptronChecks [-D datasetDir]
+public class PerceptronChecks {
+
+  String datasetDirectory = "datasets";
+  long seed = 1234;
+
+  PrintStream out = System.out;
+  int failures = 0;
+
+  private Matrix load(String name, boolean normalize) throws Exception {
+    Matrix data = new MLSystemManager().loadData(datasetDirectory + "/" + name + ".arff");
+    if (normalize) {
+      data.normalize();
+    }
+    return data;
+  }
+
+  private Matrix oneHot(String name) throws Exception {
+    return RowPipeline.create(datasetDirectory + "/" + name + ".arff", new String[]{"onehot"}).toMatrix();
+  }
+
+  private static Matrix features(Matrix data) {
+    return new Matrix(data, 0, 0, data.rows(), data.cols() - 1);
+  }
+
+  private static Matrix labels(Matrix data) {
+    return new Matrix(data, 0, data.cols() - 1, data.rows(), 1);
+  }
+
+  // Trains a seeded perceptron on its own copy of the data (train shuffles in place), with its progress silenced
+  private PerceptronLearner train(Matrix data, String... parameters) throws Exception {
+    PerceptronLearner learner = new PerceptronLearner(new Random(seed));
+    for (int i = 0; i < parameters.length; i += 2) {
+      learner.setParameter(parameters[i], parameters[i + 1]);
+    }
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) {}
+    }));
+    try {
+      learner.train(features(data), labels(data));
+    } finally {
+      System.setOut(out);
+    }
+    return learner;
+  }
+
+  private static byte[] modelBytes(SupervisedLearner learner) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream stream = new DataOutputStream(bytes);
+    learner.writeModel(stream);
+    stream.flush();
+    return bytes.toByteArray();
+  }
+
+  private void report(String name, boolean passed, String detail) {
+    out.printf("%-50s %s%s%n", name, passed ? "ok" : "FAILED", detail.isEmpty() ? "" : "  (" + detail + ")");
+    if (!passed) {
+      ++failures;
+    }
+  }
+
+  // Saves through ModelIO, loads it back, and compares both the model and the prediction for every row
+  void checkRoundTrip(String name, Matrix data, String... parameters) throws Exception {
+    PerceptronLearner learner = train(data, parameters);
+    Matrix features = features(data);
+    Matrix labels = labels(data);
+    File file = File.createTempFile("perceptron-check", ".model");
+    try {
+      ModelIO.save(file.getPath(), "perceptron", learner, features, labels);
+      SupervisedLearner loaded = ModelIO.load(file.getPath(), new Random(seed)).learner;
+
+      int differences = 0;
+      double[] expected = new double[1];
+      double[] actual = new double[1];
+      for (int i = 0; i < features.rows(); ++i) {
+        learner.predict(features.row(i), expected);
+        loaded.predict(features.row(i), actual);
+        if (Double.doubleToLongBits(expected[0]) != Double.doubleToLongBits(actual[0])) {
+          ++differences;
+        }
+      }
+      boolean sameModel = Arrays.equals(modelBytes(learner), modelBytes(loaded));
+      report("save/load " + name, sameModel && differences == 0,
+          (sameModel ? "" : "model differs, ") + differences + " of " + features.rows() + " predictions differ");
+    } finally {
+      file.delete();
+    }
+  }
+
+  void checkSameModel(String name, Matrix data, String[] first, String[] second) throws Exception {
+    byte[] firstModel = modelBytes(train(data, first));
+    byte[] secondModel = modelBytes(train(data, second));
+    report(name, Arrays.equals(firstModel, secondModel), "");
+  }
+
+  // Sparse and dense models record which inputs predict takes, so their weights are compared instead, along
+  // with the prediction for every row
+  void checkSameWeights(String name, Matrix data, String[] first, String[] second) throws Exception {
+    PerceptronLearner firstLearner = train(data, first);
+    PerceptronLearner secondLearner = train(data, second);
+    Matrix features = features(data);
+    int differences = 0;
+    double[] expected = new double[1];
+    double[] actual = new double[1];
+    for (int i = 0; i < features.rows(); ++i) {
+      firstLearner.predict(features.row(i), expected);
+      secondLearner.predict(features.row(i), actual);
+      if (Double.doubleToLongBits(expected[0]) != Double.doubleToLongBits(actual[0])) {
+        ++differences;
+      }
+    }
+    boolean sameWeights = Arrays.equals(firstLearner.weightMatrix.weights, secondLearner.weightMatrix.weights);
+    report(name, sameWeights && differences == 0,
+        (sameWeights ? "" : "weights differ, ") + differences + " of " + features.rows() + " predictions differ");
+  }
+
+  public void run() throws Exception {
+    Matrix iris = load("iris", true);
+    Matrix vowel = load("vowel", true);
+    Matrix housing = load("housing-training", false);
+    Matrix cars = oneHot("cars");
+
+    checkRoundTrip("iris", iris);
+    checkRoundTrip("iris multiclass", iris, "multiclass", "true");
+    checkRoundTrip("iris averaged", iris, "averaged", "true");
+    checkRoundTrip("iris poly kernel", iris, "kernel", "poly");
+    checkRoundTrip("cars one-hot sparse", cars, "sparse", "true");
+    checkRoundTrip("housing least squares", housing);
+
+    // Normalized data has no missing values, whose stand-in value would not be skipped as a zero
+    checkSameWeights("sparse = dense, cars one-hot", cars, new String[]{"sparse", "true"}, new String[]{"sparse", "false"});
+    checkSameWeights("sparse = dense, iris", iris, new String[]{"sparse", "true"}, new String[]{"sparse", "false"});
+    checkSameWeights("sparse = dense, vowel multiclass", vowel,
+        new String[]{"sparse", "true", "multiclass", "true"}, new String[]{"sparse", "false", "multiclass", "true"});
+
+    checkSameModel("classThreads 1 = 4, iris", iris, new String[]{"classThreads", "1"}, new String[]{"classThreads", "4"});
+    checkSameModel("classThreads 1 = 4, vowel", vowel, new String[]{"classThreads", "1"}, new String[]{"classThreads", "4"});
+    checkSameModel("classThreads 1 = 4, vowel averaged", vowel,
+        new String[]{"classThreads", "1", "averaged", "true"}, new String[]{"classThreads", "4", "averaged", "true"});
+
+    out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+  }
+
+  public static void main(String[] args) throws Exception {
+    PerceptronChecks checks = new PerceptronChecks();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-D")) {
+        checks.datasetDirectory = args[++i];
+      } else {
+        System.out.println("Usage: PerceptronChecks [-D datasetDir]");
+        return;
+      }
+    }
+    checks.run();
+    if (checks.failures > 0) {
+      System.exit(1);
+    }
+  }
+}
@@ -1,17 +1,58 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class PerceptronLearner extends SupervisedLearner {
 
 	Random rand;
-	Perceptron[] perceptrons;
+	Perceptron[] perceptrons; // Views of each class's weights in weightMatrix
+	PerceptronWeights weightMatrix;
   int numWeights = 0;
+	KernelPerceptron kernelModel; // Set instead of perceptrons when trained with a kernel
+	double[] regressionWeights; // Set instead of perceptrons when trained on a continuous label, see LeastSquares
+	LeastSquares.Sums regressionSums; // The sums of every row seen so far, while a continuous label is fit by partialFit
   
   // Constants
   boolean quadratic = true;
   double learningRate = 0.1;
 	int minNumEpochs = 10;
   double minimumAccuracyImprovement = 0.01; 
+  long featureCacheBytes = 256L << 20; // Most memory train keeps expanded rows in, see QuadraticFeatures
+	String kernel = "none"; // none, poly or rbf; see KernelPerceptron
+	int degree = 2; // Of the poly kernel
+	double gamma = 0.0; // Of the rbf kernel, 0 meaning 1 / number of features
+	int gramCacheRows = 4096; // Training rows whose kernel values are kept
+	int classThreads = 1; // Threads training the classes' perceptrons side by side
+	int hogwildThreads = 1; // Threads sharing each epoch's rows and updating the weights without locks
+	boolean averaged = false; // Predict with the average of the weights over training, see PerceptronWeights
+	double holdout = 0.0; // Share of the training rows kept out of training to decide when to stop on, 0 for none
+	int holdoutEvery = 1; // Epochs between measurements on the holdout
+	double ridge = 0.0; // Penalty on the squared regression weights
+	int regressionThreads = Runtime.getRuntime().availableProcessors();
+	String sparse = "false"; // true, false, or auto to go by the share of non-zero features
+	double maxSparseDensity = 0.5; // Most non-zero share auto treats as sparse
+	boolean sparseInputs = false; // Whether the last training used sparse inputs, which predict then uses too
+	boolean multiclass = false; // One multiclass perceptron instead of one-vs-rest, see PerceptronWeights.trainMulticlass
+
+	// What the last train did, for benchmarks
+	int epochsTrained;
+	long weightUpdates; // Class weight vectors changed
+
+	interface EpochPass {
+		// Trains on the rows in the order given, returning how many were classified right before their updates
+		int train(int[] order) throws Exception;
+	}
+
+	interface RowAccuracy {
+		double measure(int[] rows) throws Exception;
+	}
   
   public PerceptronLearner(Random rand) {
 		this.rand = rand;
@@ -29,135 +70,563 @@ public class PerceptronLearner extends SupervisedLearner {
     return numInputs + summate(numInputs);
   }
 
-	// Preforms one epoch of training on the dataset
-	public void train(Matrix features, Matrix labels) throws Exception {
-
-    // Check how many perceptrons need to be created for a classification system
-		int numClasses = labels.valueCount(0);
-		perceptrons = new Perceptron[numClasses];
+	public boolean supportsPartialFit() {
+		return kernel.equals("none") && !averaged;
+	}
 
-		int numInputs = features.row(0).length;
+	// Creates one perceptron per class with fresh weights, sized by the feature columns. A continuous label gets
+	// empty least squares sums instead, which partialFit adds each batch to.
+	public void initialize(Matrix featureSchema, Matrix labelSchema) throws Exception {
+		int numClasses = labelSchema.valueCount(0);
+		int numInputs = featureSchema.cols();
 
 		if (quadratic) {
 			numWeights = calculateNumWeightsForQuadratic(numInputs) + 1;
 		} else {
 			numWeights = numInputs + 1;
 		} 
+		kernelModel = null;
+		regressionWeights = null;
+		regressionSums = null;
+
+		if (numClasses <= 1) {
+			perceptrons = new Perceptron[0];
+			weightMatrix = null;
+			regressionSums = new LeastSquares.Sums(numWeights);
+			regressionWeights = new double[numWeights];
+			return;
+		}
 
-    int trainingLength = features.rows();
+		weightMatrix = new PerceptronWeights(rand, learningRate, numClasses, numWeights);
+		weightMatrix.multiclass = multiclass;
+		if (averaged) {
+			weightMatrix.enableAveraging();
+		}
+		perceptrons = new Perceptron[numClasses];
+		for (int i = 0; i < numClasses; ++i) {
+			perceptrons[i] = new Perceptron(weightMatrix, i, labelSchema.attrValue(0, i));
+		}
+	}
 
-		// If the output is a continuous ranking
-		if (numClasses > 1) {
+	// Replaces the weights, keeping the class names
+	private void useWeights(PerceptronWeights matrix) {
+		weightMatrix = matrix;
+		for (int i = 0; i < perceptrons.length; ++i) {
+			perceptrons[i] = new Perceptron(matrix, i, perceptrons[i].className);
+		}
+	}
+
+	// One pass over the rows in the order given, continuing from the current weights. For a continuous label the
+	// batch is added to the sums and the system solved again, which gives the fit train would give on every row
+	// so far (up to rounding), at the cost of a solve per batch.
+	public void partialFit(Matrix features, Matrix labels) throws Exception {
+		if (regressionSums != null) {
+			regressionSums.add(LeastSquares.accumulate(features, labels, 0, features.rows(), quadratic, numWeights));
+			regressionWeights = LeastSquares.solve(regressionSums, numWeights, ridge);
+			return;
+		}
+		if (regressionWeights != null) {
+			throw new Exception("A least squares fit can only be extended from initialize, not after train");
+		}
+		if (!kernel.equals("none")) {
+			throw new Exception("A kernel perceptron cannot be trained incrementally");
+		}
+		if (averaged) {
+			throw new Exception("An averaged perceptron cannot be trained incrementally");
+		}
+		if (perceptrons == null) {
+			throw new Exception("initialize must be called before partialFit");
+		}
 
-			for (int i = 0; i < numClasses; ++i) {
-				perceptrons[i] = new Perceptron(rand, learningRate, numWeights, i, labels.attrValue(0, i));
+		sparseInputs = useSparse(features);
+		for (int i = 0; i < features.rows(); ++i) {
+			if (sparseInputs) {
+				weightMatrix.train(SparseVector.expand(features.row(i), quadratic, numWeights, true), labels.get(i, 0), weightMatrix.step++);
+			} else {
+				double[] currentData = QuadraticFeatures.expand(features.row(i), quadratic, numWeights, true);
+				weightMatrix.train(currentData, labels.get(i, 0));
 			}
+		}
+	}
 
-			System.out.println();
-			System.out.println("Perceptron training in progress...");
-			System.out.println("# of Perceptrons: " + numClasses);
-      System.out.println("# of weights: " + numWeights);
-			System.out.println("| Inputs (w/ Bias) |   Weights   | Target | Net |  ^Weights   |");
+	public void setParameter(String name, String value) throws Exception {
+		if (name.equals("featureCacheMB")) {
+			featureCacheBytes = (long) (Double.parseDouble(value) * 1024 * 1024);
+		} else if (name.equals("learningRate")) {
+			learningRate = Double.parseDouble(value);
+		} else if (name.equals("quadratic")) {
+			quadratic = Boolean.parseBoolean(value);
+		} else if (name.equals("kernel")) {
+			kernel = value;
+		} else if (name.equals("degree")) {
+			degree = Integer.parseInt(value);
+		} else if (name.equals("gamma")) {
+			gamma = Double.parseDouble(value);
+		} else if (name.equals("gramCacheRows")) {
+			gramCacheRows = Integer.parseInt(value);
+		} else if (name.equals("classThreads")) {
+			classThreads = Integer.parseInt(value);
+		} else if (name.equals("hogwildThreads")) {
+			hogwildThreads = Integer.parseInt(value);
+		} else if (name.equals("averaged")) {
+			averaged = Boolean.parseBoolean(value);
+		} else if (name.equals("holdout")) {
+			holdout = Double.parseDouble(value);
+		} else if (name.equals("holdoutEvery")) {
+			holdoutEvery = Integer.parseInt(value);
+			if (holdoutEvery < 1) {
+				throw new Exception("holdoutEvery must be at least 1: " + value);
+			}
+		} else if (name.equals("ridge")) {
+			ridge = Double.parseDouble(value);
+		} else if (name.equals("regressionThreads")) {
+			regressionThreads = Integer.parseInt(value);
+		} else if (name.equals("sparse")) {
+			sparse = value;
+		} else if (name.equals("multiclass")) {
+			multiclass = Boolean.parseBoolean(value);
+		} else {
+			super.setParameter(name, value);
+		}
+	}
 
-      System.out.println("Initial Accuracy: " + measureAccuracy(features, labels, null));
+	// Applies the same swaps Matrix.shuffle would, drawing the same random numbers, to an order of row indexes
+	private void shuffleOrder(int[] order) {
+		for (int n = order.length; n > 0; n--) {
+			int i = rand.nextInt(n);
+			int tmp = order[n - 1];
+			order[n - 1] = order[i];
+			order[i] = tmp;
+		}
+	}
 
-			double previousWeightChange = Double.MAX_VALUE;
-			double weightChange = Double.MAX_VALUE;
-			int totalEpochs = 0;
+	// Accuracy of the given weights on some of the training rows from their already expanded inputs, the same
+	// value measureAccuracy gives
+	private double measureAccuracy(PerceptronWeights matrix, QuadraticFeatures expanded, Matrix labels, int[] rows) {
+		double[] nets = new double[matrix.numClasses];
+		int correctCount = 0;
+		for (int row : rows) {
+			int predicted = expanded.sparse ? matrix.classify(expanded.getSparse(row), nets) : matrix.classify(expanded.get(row), nets);
+			if (predicted == (int) labels.get(row, 0)) {
+				correctCount++;
+			}
+		}
+		return (double) correctCount / rows.length;
+	}
 
-      double secondPreviousAccuracy = 0.0;
-      double previousAccuracy = 0.0;
-      double currentAccuracy = 0.0;
+	// One epoch over the rows in the given order. With a pool, each class runs the whole epoch on its own thread
+	// against the shared rows; a class's updates only depend on its own weights, so the weights come out the
+	// same as from the sequential loop. With hogwildThreads, see trainEpochHogwild. Returns how many rows were
+	// classified right before their updates.
+	private int trainEpoch(final QuadraticFeatures expanded, final Matrix labels, final int[] order, ExecutorService pool) throws Exception {
+		if (pool == null) {
+			int correctCount = 0;
+			for (int i = 0; i < order.length; ++i) {
+				int target = (int) labels.get(order[i], 0);
+				if (trainRow(expanded, order[i], target, weightMatrix.step++) == target) {
+					correctCount++;
+				}
+			}
+			return correctCount;
+		}
+		if (hogwildThreads > 1) {
+			return trainEpochHogwild(expanded, labels, order, pool);
+		}
 
-			// Execute until change is less than threshold
-			do {
+		// Each class keeps its nets, which decide the rows' classes once every class is done
+		final int numClasses = weightMatrix.numClasses;
+		final double[] nets = new double[numClasses * order.length];
+		final long firstStep = weightMatrix.step;
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int c = 0; c < numClasses; ++c) {
+			final int classNumber = c;
+			futures.add(pool.submit(() -> {
+				int offset = classNumber * order.length;
+				for (int i = 0; i < order.length; ++i) {
+					double target = labels.get(order[i], 0);
+					nets[offset + i] = expanded.sparse
+							? weightMatrix.trainClass(classNumber, expanded.getSparse(order[i]), target, firstStep + i)
+							: weightMatrix.trainClass(classNumber, expanded.get(order[i]), target, firstStep + i);
+				}
+				return 0;
+			}));
+		}
+		waitFor(futures);
+		weightMatrix.step += order.length;
+
+		int correctCount = 0;
+		for (int i = 0; i < order.length; ++i) {
+			double highestNet = 0.0;
+			int highestIndex = 0;
+			for (int c = 0; c < numClasses; ++c) {
+				if (nets[c * order.length + i] > highestNet) {
+					highestNet = nets[c * order.length + i];
+					highestIndex = c;
+				}
+			}
+			if (highestIndex == (int) labels.get(order[i], 0)) {
+				correctCount++;
+			}
+		}
+		return correctCount;
+	}
 
-        secondPreviousAccuracy = previousAccuracy;
-        previousAccuracy = currentAccuracy;
+	// Trains every class on a row of the store, as the given step of the average, returning the class the row
+	// was given before the updates
+	private int trainRow(QuadraticFeatures expanded, int row, double target, long step) {
+		if (expanded.sparse) {
+			return weightMatrix.train(expanded.getSparse(row), target, step);
+		}
+		return weightMatrix.train(expanded.get(row), target, step);
+	}
 
-        ++totalEpochs;
-				features.shuffle(rand, labels);
+	// Whether to give the perceptrons sparse inputs, which only pays when most features are 0 (as one-hot
+	// columns are). Their products are then mostly 0 too.
+	private boolean useSparse(Matrix features) {
+		if (sparse.equals("auto")) {
+			return SparseVector.density(features, 1000) <= maxSparseDensity;
+		}
+		return Boolean.parseBoolean(sparse);
+	}
 
-				previousWeightChange = weightChange;
-				weightChange = 0.0;
+	// Hogwild: each thread takes its own slice of the epoch's order and updates the shared weights with no locks.
+	// Threads can overwrite each other's updates to a weight now and then, so the weights differ from the
+	// sequential loop's, but rows seldom change the same weights at the same moment and the accuracy stays
+	// close to it (see LearnerBenchmark -hogwild).
+	private int trainEpochHogwild(final QuadraticFeatures expanded, final Matrix labels, final int[] order, ExecutorService pool) throws Exception {
+		final long firstStep = weightMatrix.step;
+		int sliceSize = (order.length + hogwildThreads - 1) / hogwildThreads;
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int start = 0; start < order.length; start += sliceSize) {
+			final int sliceStart = start;
+			final int sliceEnd = Math.min(order.length, start + sliceSize);
+			futures.add(pool.submit(() -> {
+				int correctCount = 0;
+				for (int i = sliceStart; i < sliceEnd; ++i) {
+					int target = (int) labels.get(order[i], 0);
+					if (trainRow(expanded, order[i], target, firstStep + i) == target) {
+						correctCount++;
+					}
+				}
+				return correctCount;
+			}));
+		}
+		int correctCount = waitFor(futures);
+		weightMatrix.step += order.length;
+		return correctCount;
+	}
 
-				for (int i = 0; i < trainingLength; ++i) {
-					double net = 0;
-					double[] currentData = new double[numWeights]; 
+	// Waits for every task, returning the sum of their results
+	private int waitFor(List<Future<Integer>> futures) throws Exception {
+		try {
+			int sum = 0;
+			for (Future<Integer> future : futures) {
+				sum += future.get();
+			}
+			return sum;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
 
-					// Initialize the first data to be equivalent to the features
-					for (int j = 0; j < features.row(i).length; ++j) {
-						currentData[j] = features.row(i)[j];
-					}
+	// Whether to run another epoch: always for the first minNumEpochs, then while accuracy improves enough or falls back
+	private boolean keepTraining(int totalEpochs, double currentAccuracy, double previousAccuracy, double secondPreviousAccuracy) {
+		return totalEpochs < minNumEpochs
+          || (totalEpochs >= minNumEpochs && (currentAccuracy >= previousAccuracy + minimumAccuracyImprovement))
+          || (totalEpochs >= minNumEpochs && (currentAccuracy < previousAccuracy || currentAccuracy < secondPreviousAccuracy));
+	}
 
-					// Then add the second order data
-          if (quadratic) {
-			  		for (int j = features.row(i).length, a = 0; a < features.row(i).length; ++a) {
-		  				for (int b = a; b < features.row(i).length; ++b) {
-  							currentData[j] = features.row(i)[a] *
-                  features.row(i)[b];
-							  ++j;
-						  }
-					  }
-          }
-
-          // Add the bias
-          currentData[currentData.length - 1] = 1.0;
-
-					for (int j = 0; j < numClasses; ++j) {
-						perceptrons[j].train(currentData, labels.get(i, 0));
-					}
-					
+	// The epoch loop of both the weight and the kernel perceptron. The accuracy the stopping rule goes by is
+	// counted from the predictions the rows get during the pass itself, before their own updates, so it costs no
+	// second pass over the data. With a holdout, it is instead the exact accuracy on rows kept out of training,
+	// measured every holdoutEvery epochs, and the rule is only checked after those measurements.
+	//
+	// measureExactly is for models that predict with other weights than the ones the pass updates, the averaged
+	// perceptron: the pass's own predictions say nothing about the average, so without a holdout the accuracy is
+	// measured exactly on the training rows after every epoch instead, at the cost of that second pass.
+	private void runEpochs(int numRows, EpochPass pass, RowAccuracy holdoutAccuracy, boolean measureExactly) throws Exception {
+		int[] rows = new int[numRows];
+		for (int i = 0; i < numRows; ++i) {
+			rows[i] = i;
+		}
+		int holdoutCount = (int) (numRows * holdout);
+		if (holdoutCount > 0) {
+			shuffleOrder(rows);
+		}
+		int[] heldOut = Arrays.copyOfRange(rows, 0, holdoutCount);
+		int[] order = Arrays.copyOfRange(rows, holdoutCount, numRows);
+
+		int totalEpochs = 0;
+
+    double secondPreviousAccuracy = 0.0;
+    double previousAccuracy = 0.0;
+    double currentAccuracy = 0.0;
+		boolean measured;
+
+		// Execute until change is less than threshold
+		do {
+      ++totalEpochs;
+			TrainingEvents.Epoch epochEvent = new TrainingEvents.Epoch();
+			epochEvent.begin();
+			long epochStart = System.nanoTime();
+			shuffleOrder(order);
+			double trainingAccuracy = (double) pass.train(order) / order.length;
+			long epochNanos = System.nanoTime() - epochStart;
+
+			measured = heldOut.length == 0 || totalEpochs % holdoutEvery == 0;
+			if (measured) {
+				secondPreviousAccuracy = previousAccuracy;
+				previousAccuracy = currentAccuracy;
+				if (heldOut.length > 0) {
+					currentAccuracy = holdoutAccuracy.measure(heldOut);
+				} else {
+					currentAccuracy = measureExactly ? holdoutAccuracy.measure(order) : trainingAccuracy;
 				}
+			}
 
-        currentAccuracy = measureAccuracy(features, labels, null);
+			if (epochEvent.shouldCommit()) {
+				epochEvent.learner = "perceptron";
+				epochEvent.epoch = totalEpochs;
+				epochEvent.samples = order.length;
+				epochEvent.samplesPerSecond = order.length / (epochNanos / 1e9);
+				epochEvent.accuracy = currentAccuracy;
+				epochEvent.commit();
+			}
 
-        System.out.println("---------------------------");
-			  System.out.println("Training Epoch: " + totalEpochs);
-				System.out.println("Accurracy: " + currentAccuracy);
-			} while (totalEpochs < minNumEpochs
-          || (totalEpochs >= minNumEpochs && (currentAccuracy >= previousAccuracy + minimumAccuracyImprovement))
-          || (totalEpochs >= minNumEpochs && (currentAccuracy < previousAccuracy || currentAccuracy < secondPreviousAccuracy)));
-		} else { // Else, if the data is continuous 
-			System.out.println("Perceptron training does not handle continuous ranking learning. NO TRAINING OCCURRED");
+      System.out.println("---------------------------");
+		  System.out.println("Training Epoch: " + totalEpochs);
+			System.out.println("Accurracy: " + trainingAccuracy);
+			if (heldOut.length > 0 && measured) {
+				System.out.println("Holdout Accuracy: " + currentAccuracy);
+			} else if (measureExactly) {
+				System.out.println("Averaged Accuracy: " + currentAccuracy);
+			}
+		} while (!measured || keepTraining(totalEpochs, currentAccuracy, previousAccuracy, secondPreviousAccuracy));
+		epochsTrained = totalEpochs;
+	}
+
+	// Trains epochs over the dataset until the accuracy stops improving
+	public void train(Matrix features, Matrix labels) throws Exception {
+
+    // Check how many perceptrons need to be created for a classification system
+		int numClasses = labels.valueCount(0);
+
+		if (numClasses > 1 && !kernel.equals("none")) {
+			trainKernel(features, labels);
+			return;
+		}
+		kernelModel = null;
+		regressionWeights = null;
+		regressionSums = null;
+
+		// If the output is a continuous ranking
+		if (numClasses > 1) {
+
+			initialize(features, labels);
+
+			// Rows are expanded once and shared by every perceptron and epoch. The epochs shuffle an order of
+			// row indexes rather than the matrices, so that row i of the store stays row i of the features.
+			sparseInputs = useSparse(features);
+			QuadraticFeatures expanded = new QuadraticFeatures(features, quadratic, numWeights, featureCacheBytes, sparseInputs);
+
+			// The training threads share the store, so it is filled up front and only read from then on. The
+			// classes of a multiclass perceptron are updated together, so they cannot train on their own threads.
+			ExecutorService pool = null;
+			if ((classThreads > 1 && !multiclass) || hogwildThreads > 1) {
+				expanded.expandCached();
+				int numThreads = hogwildThreads > 1 ? hogwildThreads : Math.min(classThreads, numClasses);
+				pool = Executors.newFixedThreadPool(numThreads, runnable -> {
+					Thread thread = new Thread(runnable, "perceptron-train");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			final ExecutorService trainingPool = pool;
+
+			System.out.println();
+			System.out.println("Perceptron training in progress...");
+			System.out.println("# of Perceptrons: " + numClasses);
+      System.out.println("# of weights: " + numWeights);
+			if (sparseInputs) {
+				System.out.println("Sparse inputs");
+			}
+			System.out.println("| Inputs (w/ Bias) |   Weights   | Target | Net |  ^Weights   |");
+
+			// An averaged perceptron is measured on (and predicts with) the averaged weights
+			runEpochs(features.rows(), order -> trainEpoch(expanded, labels, order, trainingPool),
+					rows -> measureAccuracy(averaged ? weightMatrix.averaged() : weightMatrix, expanded, labels, rows), averaged);
+
+			weightUpdates = weightMatrix.updates;
+			if (pool != null) {
+				pool.shutdown();
+			}
+			if (averaged) {
+				useWeights(weightMatrix.averaged());
+			}
+		} else { // Else, if the data is continuous, fit a linear model by least squares
+			perceptrons = new Perceptron[numClasses];
+			weightMatrix = null;
+			int numInputs = features.cols();
+			numWeights = quadratic ? calculateNumWeightsForQuadratic(numInputs) + 1 : numInputs + 1;
+
+			System.out.println();
+			System.out.println("Least squares fit in progress...");
+      System.out.println("# of weights: " + numWeights);
+			regressionWeights = LeastSquares.fit(features, labels, quadratic, numWeights, ridge, regressionThreads);
 		}
 	}
 
-	public void predict(double[] features, double[] labels) throws Exception {
-		
-		double highestNet = 0.0;
-		int highestPerceptronIndex = 0;
+	// The same epochs and stopping rule as train, on one-vs-rest perceptrons in dual form. The kernel works on the
+	// raw features; a poly kernel of degree 2 stands in for the quadratic expansion without its weights.
+	private void trainKernel(Matrix features, Matrix labels) throws Exception {
+		int numClasses = labels.valueCount(0);
+		double kernelGamma = gamma > 0 ? gamma : 1.0 / features.cols();
+		perceptrons = null;
+		weightMatrix = null;
+		regressionWeights = null;
+		regressionSums = null;
+		kernelModel = new KernelPerceptron(kernel, degree, kernelGamma, learningRate, numClasses);
+		kernelModel.beginTraining(features, gramCacheRows);
+
+		System.out.println();
+		System.out.println("Kernel perceptron training in progress...");
+		System.out.println("# of Perceptrons: " + numClasses);
+		System.out.println("Kernel: " + kernel);
+
+		runEpochs(features.rows(), order -> {
+			int correctCount = 0;
+			for (int i = 0; i < order.length; ++i) {
+				int target = (int) labels.get(order[i], 0);
+				if (kernelModel.trainRow(order[i], target) == target) {
+					correctCount++;
+				}
+			}
+			return correctCount;
+		}, rows -> {
+			int correctCount = 0;
+			for (int row : rows) {
+				if (kernelModel.classifyRow(row) == (int) labels.get(row, 0)) {
+					correctCount++;
+				}
+			}
+			return (double) correctCount / rows.length;
+		}, false);
+		System.out.println("Support examples: " + kernelModel.numSupports());
 
-		int numPerceptrons = perceptrons.length;
+		kernelModel.endTraining();
+	}
 
-		for (int i = 0; i < numPerceptrons; ++i) {
-			
-      double[] currentData = new double[numWeights]; 
+	public void writeModel(DataOutputStream out) throws Exception {
+		out.writeBoolean(quadratic);
+		if (kernelModel != null) {
+			// A negative weight count, which a weight model never has, marks a kernel model (-1), a regression (-2),
+			// a multiclass perceptron (-3) or one that predicts from sparse inputs (-4); the last two are followed by
+			// the weight model
+			out.writeInt(-1);
+			kernelModel.write(out);
+			return;
+		}
+		if (weightMatrix != null && weightMatrix.multiclass) {
+			out.writeInt(-3);
+		}
+		if (weightMatrix != null && sparseInputs) {
+			out.writeInt(-4);
+		}
+		if (regressionWeights != null) {
+			out.writeInt(-2);
+			out.writeInt(numWeights);
+			for (int j = 0; j < numWeights; ++j) {
+				out.writeDouble(regressionWeights[j]);
+			}
+			return;
+		}
+		out.writeInt(numWeights);
+		out.writeInt(perceptrons.length);
+		for (Perceptron perceptron : perceptrons) {
+			out.writeInt(perceptron.classNumber);
+			out.writeUTF(perceptron.className);
+			for (int j = 0; j < numWeights; ++j) {
+				out.writeDouble(perceptron.weights[perceptron.offset + j]);
+			}
+		}
+	}
 
-			// Initialize the first data to be equivalent to the features
-			for (int j = 0; j < features.length; ++j) {
-				currentData[j] = features[j];
+	public void readModel(DataInputStream in) throws Exception {
+		quadratic = in.readBoolean();
+		numWeights = in.readInt();
+		kernelModel = null;
+		regressionWeights = null;
+		regressionSums = null;
+		if (numWeights == -1) {
+			kernelModel = KernelPerceptron.read(in);
+			kernel = kernelModel.kernel;
+			sparseInputs = false;
+			perceptrons = null;
+			weightMatrix = null;
+			return;
+		}
+		boolean multiclassModel = numWeights == -3;
+		if (multiclassModel) {
+			numWeights = in.readInt();
+		}
+		sparseInputs = numWeights == -4;
+		if (sparseInputs) {
+			numWeights = in.readInt();
+		}
+		if (numWeights == -2) {
+			numWeights = in.readInt();
+			regressionWeights = new double[numWeights];
+			for (int j = 0; j < numWeights; ++j) {
+				regressionWeights[j] = in.readDouble();
+			}
+			perceptrons = new Perceptron[0];
+			weightMatrix = null;
+			return;
+		}
+		int numClasses = in.readInt();
+		weightMatrix = new PerceptronWeights(learningRate, numClasses, numWeights, new double[numClasses * numWeights]);
+		weightMatrix.multiclass = multiclassModel;
+		perceptrons = new Perceptron[numClasses];
+		for (int i = 0; i < numClasses; ++i) {
+			int classNumber = in.readInt();
+			String className = in.readUTF();
+			int offset = weightMatrix.offset(i);
+			for (int j = 0; j < numWeights; ++j) {
+				weightMatrix.weights[offset + j] = in.readDouble();
 			}
+			perceptrons[i] = new Perceptron(weightMatrix, i, className);
+			perceptrons[i].classNumber = classNumber;
+		}
+	}
 
-			// Then add the second order data
-      if (quadratic) {
-	  		for (int j = features.length, a = 0; a < features.length; ++a) {
-  				for (int b = a; b < features.length; ++b) {
-            //System.out.println("j => " + j + " -> (A,B) is: (" + a + "," + b + ")");
-			  		currentData[j] = features[a] * features[b];
-		  			++j;
-	  			}
-  			}
-      }
-      
-      double currentNet = perceptrons[i].predict(currentData);
-			if (currentNet > highestNet) {
-				highestNet = currentNet;
-				highestPerceptronIndex = i;
+	public void predict(double[] features, double[] labels) throws Exception {
+		if (kernelModel != null) {
+			labels[0] = kernelModel.classify(features);
+			return;
+		}
+		if (regressionWeights != null) {
+			double[] currentData = QuadraticFeatures.expand(features, quadratic, numWeights, true);
+			double prediction = 0.0;
+			for (int j = 0; j < numWeights; ++j) {
+				prediction += currentData[j] * regressionWeights[j];
 			}
+			labels[0] = prediction;
+			return;
 		}
 
-		labels[0] = highestPerceptronIndex;
+		// Nothing was trained for continuous labels
+		if (weightMatrix == null) {
+			labels[0] = 0;
+			return;
+		}
+
+		// Expanded once for all of the perceptrons. The bias input is left at 0, as it always has been here.
+		if (sparseInputs) {
+			labels[0] = weightMatrix.classify(SparseVector.expand(features, quadratic, numWeights, false), new double[weightMatrix.numClasses]);
+			return;
+		}
+		double[] currentData = QuadraticFeatures.expand(features, quadratic, numWeights, false);
+		labels[0] = weightMatrix.classify(currentData, new double[weightMatrix.numClasses]);
 	}
 
 }
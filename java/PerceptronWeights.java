@@ -0,0 +1,290 @@
+import java.util.Random;
+
+// The weights of all the one-vs-rest perceptrons in one class-by-weight array: class c's weights are
+// weights[c * numWeights] to weights[(c + 1) * numWeights - 1], the last one being its bias. A training step
+// scores and updates every class in one sweep while the input row stays in cache, instead of one Perceptron
+// call per class. The Perceptron objects of a learner are views into this array.
+//
+// Each net is summed in the same order Perceptron sums it, so the weights come out bit for bit the same.
+public class PerceptronWeights {
+
+  int numClasses;
+  int numWeights;
+  double learningRate;
+  double[] weights;
+
+  // For the averaged perceptron: the sum of each update times the step it was made at, and the step counter,
+  // which starts at 1 and moves on once per training row. The average of the weights after every step is then
+  // weights - updateSums / step, so keeping it costs one more multiply-add per changed weight.
+  double[] updateSums;
+  long step = 1;
+
+  boolean multiclass; // Train and classify as one multiclass perceptron, see trainMulticlass
+  long updates; // Class weight vectors changed so far (counted without synchronization under Hogwild)
+
+  // Random weights of -1 or 0, drawn class by class in order, as each per-class perceptron drew its own before
+  public PerceptronWeights(Random rand, double learningRate, int numClasses, int numWeights) {
+    this(learningRate, numClasses, numWeights, new double[numClasses * numWeights]);
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = -1.0 + rand.nextInt(2);
+    }
+  }
+
+  public PerceptronWeights(double learningRate, int numClasses, int numWeights, double[] weights) {
+    this.learningRate = learningRate;
+    this.numClasses = numClasses;
+    this.numWeights = numWeights;
+    this.weights = weights;
+  }
+
+  public int offset(int classNumber) {
+    return classNumber * numWeights;
+  }
+
+  // Starts keeping the average of the weights from here on
+  public void enableAveraging() {
+    updateSums = new double[weights.length];
+  }
+
+  // Perceptron.train for every class on one input whose last entry is the bias input 1. Returns the class the
+  // input was given before the updates: the highest training net above 0, or 0 if none is above 0.
+  public int train(double[] input, double targetClassNumber) {
+    int predicted = train(input, targetClassNumber, step);
+    ++step;
+    return predicted;
+  }
+
+  // The same, as the given step of the average, leaving step to the caller
+  public int train(double[] input, double targetClassNumber, long rowStep) {
+    if (multiclass) {
+      return trainMulticlass(input, (int) targetClassNumber, rowStep);
+    }
+    double highestNet = 0.0;
+    int highestIndex = 0;
+    for (int c = 0; c < numClasses; ++c) {
+      double net = trainClass(c, input, targetClassNumber, rowStep);
+      if (net > highestNet) {
+        highestNet = net;
+        highestIndex = c;
+      }
+    }
+    return highestIndex;
+  }
+
+  // Perceptron.train for one class, as the given step of the average, returning the net before the update. It
+  // only touches that class's weights, so different classes can be trained on different threads; the caller
+  // then moves step on.
+  public double trainClass(int c, double[] input, double targetClassNumber, long rowStep) {
+    int offset = c * numWeights;
+    int bias = numWeights - 1;
+    double net = 0;
+    for (int j = 0; j < numWeights; ++j) {
+      net += input[j] * weights[offset + j];
+    }
+    // The bias is added again, as in Perceptron.train
+    net += weights[offset + bias];
+
+    double target = targetClassNumber != c ? 0.0 : 1.0;
+    double output = net > 0 ? 1.0 : 0.0;
+    if (target != output) {
+      ++updates;
+      double change = learningRate * (target - output);
+      double previousBias = weights[offset + bias];
+      for (int j = 0; j < numWeights; ++j) {
+        weights[offset + j] += change * input[j];
+      }
+      weights[offset + bias] = change;
+
+      if (updateSums != null) {
+        for (int j = 0; j < bias; ++j) {
+          updateSums[offset + j] += rowStep * change * input[j];
+        }
+        // The bias is set rather than moved, which is a change of its difference from before
+        updateSums[offset + bias] += rowStep * (change - previousBias);
+      }
+    }
+    return net;
+  }
+
+  // The average of the weights over every step so far, as weights of their own
+  public PerceptronWeights averaged() {
+    double[] average = new double[weights.length];
+    for (int i = 0; i < weights.length; ++i) {
+      average[i] = weights[i] - updateSums[i] / step;
+    }
+    PerceptronWeights result = new PerceptronWeights(learningRate, numClasses, numWeights, average);
+    result.multiclass = multiclass;
+    return result;
+  }
+
+  // The multiclass (Crammer-Singer/Collins) perceptron: every class scores the input, bias input included, and
+  // only on a mistake are the target's weights moved toward the input and the predicted class's away from it.
+  // That is at most two weight vectors per row, where one-vs-rest can change every class's. Returns the
+  // predicted class.
+  public int trainMulticlass(double[] input, int target, long rowStep) {
+    int predicted = 0;
+    double highestScore = 0.0;
+    for (int c = 0, offset = 0; c < numClasses; ++c, offset += numWeights) {
+      double score = 0.0;
+      for (int j = 0; j < numWeights; ++j) {
+        score += input[j] * weights[offset + j];
+      }
+      if (c == 0 || score > highestScore) {
+        highestScore = score;
+        predicted = c;
+      }
+    }
+    if (predicted != target) {
+      addScaled(target, learningRate, input, rowStep);
+      addScaled(predicted, -learningRate, input, rowStep);
+    }
+    return predicted;
+  }
+
+  public int trainMulticlass(SparseVector input, int target, long rowStep) {
+    int predicted = 0;
+    double highestScore = 0.0;
+    for (int c = 0, offset = 0; c < numClasses; ++c, offset += numWeights) {
+      double score = 0.0;
+      for (int k = 0; k < input.size; ++k) {
+        score += input.values[k] * weights[offset + input.indices[k]];
+      }
+      if (c == 0 || score > highestScore) {
+        highestScore = score;
+        predicted = c;
+      }
+    }
+    if (predicted != target) {
+      addScaled(target, learningRate, input, rowStep);
+      addScaled(predicted, -learningRate, input, rowStep);
+    }
+    return predicted;
+  }
+
+  private void addScaled(int c, double change, double[] input, long rowStep) {
+    ++updates;
+    int offset = c * numWeights;
+    for (int j = 0; j < numWeights; ++j) {
+      weights[offset + j] += change * input[j];
+    }
+    if (updateSums != null) {
+      for (int j = 0; j < numWeights; ++j) {
+        updateSums[offset + j] += rowStep * change * input[j];
+      }
+    }
+  }
+
+  private void addScaled(int c, double change, SparseVector input, long rowStep) {
+    ++updates;
+    int offset = c * numWeights;
+    for (int k = 0; k < input.size; ++k) {
+      weights[offset + input.indices[k]] += change * input.values[k];
+    }
+    if (updateSums != null) {
+      for (int k = 0; k < input.size; ++k) {
+        updateSums[offset + input.indices[k]] += rowStep * change * input.values[k];
+      }
+    }
+  }
+
+  // train for a sparse input, whose last entry is the bias input 1. Only the weights of non-zero inputs are read
+  // or changed; the result is the same as for the dense input.
+  public int train(SparseVector input, double targetClassNumber, long rowStep) {
+    if (multiclass) {
+      return trainMulticlass(input, (int) targetClassNumber, rowStep);
+    }
+    double highestNet = 0.0;
+    int highestIndex = 0;
+    for (int c = 0; c < numClasses; ++c) {
+      double net = trainClass(c, input, targetClassNumber, rowStep);
+      if (net > highestNet) {
+        highestNet = net;
+        highestIndex = c;
+      }
+    }
+    return highestIndex;
+  }
+
+  public double trainClass(int c, SparseVector input, double targetClassNumber, long rowStep) {
+    int offset = c * numWeights;
+    int bias = numWeights - 1;
+    int[] indices = input.indices;
+    double[] values = input.values;
+    double net = 0;
+    for (int k = 0; k < input.size; ++k) {
+      net += values[k] * weights[offset + indices[k]];
+    }
+    net += weights[offset + bias];
+
+    double target = targetClassNumber != c ? 0.0 : 1.0;
+    double output = net > 0 ? 1.0 : 0.0;
+    if (target != output) {
+      ++updates;
+      double change = learningRate * (target - output);
+      double previousBias = weights[offset + bias];
+      for (int k = 0; k < input.size; ++k) {
+        weights[offset + indices[k]] += change * values[k];
+      }
+      weights[offset + bias] = change;
+
+      if (updateSums != null) {
+        for (int k = 0; k < input.size; ++k) {
+          if (indices[k] != bias) {
+            updateSums[offset + indices[k]] += rowStep * change * values[k];
+          }
+        }
+        updateSums[offset + bias] += rowStep * (change - previousBias);
+      }
+    }
+    return net;
+  }
+
+  // nets for a sparse input
+  public void nets(SparseVector input, double[] nets) {
+    int bias = numWeights - 1;
+    for (int c = 0, offset = 0; c < numClasses; ++c, offset += numWeights) {
+      double net = 0.0;
+      for (int k = 0; k < input.size && input.indices[k] < bias; ++k) {
+        net += input.values[k] * weights[offset + input.indices[k]];
+      }
+      nets[c] = net + weights[offset + bias];
+    }
+  }
+
+  public int classify(SparseVector input, double[] nets) {
+    nets(input, nets);
+    return highest(nets);
+  }
+
+  // The net of every class for an input whose last entry is the bias input 1, which is left out of the sum since
+  // the bias weight is added on its own
+  public void nets(double[] input, double[] nets) {
+    int bias = numWeights - 1;
+    for (int c = 0, offset = 0; c < numClasses; ++c, offset += numWeights) {
+      double net = 0.0;
+      for (int j = 0; j < bias; ++j) {
+        net += input[j] * weights[offset + j];
+      }
+      nets[c] = net + weights[offset + bias];
+    }
+  }
+
+  // Index of the class with the highest net above 0, or 0 if none is above 0
+  public int classify(double[] input, double[] nets) {
+    nets(input, nets);
+    return highest(nets);
+  }
+
+  // A multiclass perceptron takes the highest net even if none is above 0
+  private int highest(double[] nets) {
+    double highestNet = multiclass ? nets[0] : 0.0;
+    int highestIndex = 0;
+    for (int c = 0; c < numClasses; ++c) {
+      if (nets[c] > highestNet) {
+        highestNet = nets[c];
+        highestIndex = c;
+      }
+    }
+    return highestIndex;
+  }
+}
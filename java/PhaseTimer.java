@@ -0,0 +1,110 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+// Records wall time, CPU time and allocated bytes of the current thread for each phase of an experiment
+// (loading, normalizing, splitting, copying, training, evaluating), optionally per fold.
+public class PhaseTimer {
+
+  static ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  public static class Phase {
+    String name;
+    int fold; // -1 when the phase is not part of a fold
+    long startWall;
+    long startCpu;
+    long startBytes;
+    long wallNanos;
+    long cpuNanos;
+    long allocatedBytes;
+
+    public Phase(String name, int fold) {
+      this.name = name;
+      this.fold = fold;
+    }
+
+    public double seconds() {
+      return wallNanos / 1e9;
+    }
+  }
+
+  List<Phase> phases = new ArrayList<Phase>();
+
+  // Nanoseconds of CPU used so far by the current thread, or -1 if unsupported
+  static long cpuTime() {
+    return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+  }
+
+  // Bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+  static long allocatedBytes() {
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  public Phase start(String name) {
+    return start(name, -1);
+  }
+
+  public Phase start(String name, int fold) {
+    Phase phase = new Phase(name, fold);
+    phase.startBytes = allocatedBytes();
+    phase.startCpu = cpuTime();
+    phase.startWall = System.nanoTime();
+    return phase;
+  }
+
+  // Must be called on the same thread that started the phase
+  public Phase stop(Phase phase) {
+    phase.wallNanos = System.nanoTime() - phase.startWall;
+    phase.cpuNanos = cpuTime() - phase.startCpu;
+    phase.allocatedBytes = allocatedBytes() - phase.startBytes;
+    phases.add(phase);
+    return phase;
+  }
+
+  public void printTable(PrintStream out) {
+    out.printf("%-12s %5s %14s %14s %16s%n", "Phase", "Fold", "Wall (ms)", "CPU (ms)", "Allocated (KB)");
+
+    long totalWall = 0;
+    long totalCpu = 0;
+    long totalBytes = 0;
+
+    for (Phase phase : phases) {
+      out.printf("%-12s %5s %14.3f %14.3f %16.1f%n", phase.name, phase.fold < 0 ? "-" : Integer.toString(phase.fold),
+          phase.wallNanos / 1e6, phase.cpuNanos / 1e6, phase.allocatedBytes / 1024.0);
+      totalWall += phase.wallNanos;
+      totalCpu += phase.cpuNanos;
+      totalBytes += phase.allocatedBytes;
+    }
+
+    out.printf("%-12s %5s %14.3f %14.3f %16.1f%n", "total", "", totalWall / 1e6, totalCpu / 1e6, totalBytes / 1024.0);
+  }
+
+  // Writes JSON if the file name ends in .json, CSV otherwise
+  public void export(String fileName) throws Exception {
+    PrintWriter writer = new PrintWriter(fileName);
+
+    if (fileName.toLowerCase().endsWith(".json")) {
+      writer.println("[");
+      for (int i = 0; i < phases.size(); ++i) {
+        Phase phase = phases.get(i);
+        writer.print("  {\"phase\": \"" + phase.name + "\", \"fold\": " + phase.fold + ", \"wallNanos\": " + phase.wallNanos
+            + ", \"cpuNanos\": " + phase.cpuNanos + ", \"allocatedBytes\": " + phase.allocatedBytes + "}");
+        writer.println(i < phases.size() - 1 ? "," : "");
+      }
+      writer.println("]");
+    } else {
+      writer.println("phase,fold,wallNanos,cpuNanos,allocatedBytes");
+      for (Phase phase : phases) {
+        writer.println(phase.name + "," + phase.fold + "," + phase.wallNanos + "," + phase.cpuNanos + "," + phase.allocatedBytes);
+      }
+    }
+
+    writer.close();
+  }
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Load generator for PredictionServer. Each connection sends the feature columns of the ARFF rows in turn,
+// waits for each answer, and records the round trip latency.
+//
+// java PredictionLoadClient [ARFF_File] {[numConnections] [requestsPerConnection] [port]}
+public class PredictionLoadClient {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("Usage: PredictionLoadClient [ARFF_File] {[numConnections] [requestsPerConnection] [port]}");
+      return;
+    }
+
+    final int numConnections = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    final int requestsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+    final int port = args.length > 3 ? Integer.parseInt(args[3]) : PredictionServer.defaultPort;
+
+    Matrix data = new Matrix();
+    data.loadArff(args[0]);
+
+    // Feature columns written back as ARFF values, the label column is left out
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < data.rows(); ++i) {
+      StringBuilder line = new StringBuilder();
+      for (int j = 0; j < data.cols() - 1; ++j) {
+        if (j > 0) {
+          line.append(',');
+        }
+        double value = data.get(i, j);
+        if (value == Matrix.MISSING) {
+          line.append('?');
+        } else if (data.valueCount(j) > 0) {
+          line.append(data.attrValue(j, (int) value));
+        } else {
+          line.append(value);
+        }
+      }
+      lines.add(line.toString());
+    }
+
+    final long[][] latencies = new long[numConnections][requestsPerConnection];
+    final int[] errors = new int[1];
+    Thread[] threads = new Thread[numConnections];
+    long startTime = System.nanoTime();
+
+    for (int c = 0; c < numConnections; ++c) {
+      final int connection = c;
+      threads[c] = new Thread(() -> {
+        try {
+          Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+          socket.setTcpNoDelay(true);
+          BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+          PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+          for (int i = 0; i < requestsPerConnection; ++i) {
+            long sent = System.nanoTime();
+            writer.println(lines.get((connection + i * numConnections) % lines.size()));
+            writer.flush();
+            String answer = reader.readLine();
+            latencies[connection][i] = System.nanoTime() - sent;
+            if (answer == null || answer.startsWith("ERROR")) {
+              synchronized (errors) {
+                ++errors[0];
+              }
+            }
+          }
+          writer.println("QUIT");
+          writer.flush();
+          socket.close();
+        } catch (Exception e) {
+          System.out.println("Connection " + connection + " failed: " + e);
+        }
+      });
+      threads[c].start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    long[] all = new long[numConnections * requestsPerConnection];
+    for (int c = 0; c < numConnections; ++c) {
+      System.arraycopy(latencies[c], 0, all, c * requestsPerConnection, requestsPerConnection);
+    }
+    Arrays.sort(all);
+
+    System.out.println("Connections: " + numConnections + ", requests: " + all.length + ", errors: " + errors[0]);
+    System.out.printf("Client latency p50=%.1fus p99=%.1fus, throughput=%.0f requests/s%n",
+        all[all.length / 2] / 1000.0, all[(int) (all.length * 0.99)] / 1000.0, all.length / seconds);
+
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    writer.println("STATS");
+    System.out.println("Server: " + reader.readLine());
+    writer.println("QUIT");
+    socket.close();
+  }
+}
@@ -0,0 +1,207 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Serves predictions from a saved model (see ModelIO) over a loopback TCP socket.
+//
+// Protocol, one line per request:
+//   comma separated feature values, written the same way as an ARFF data line -> the predicted label
+//   STATS -> latency percentiles and throughput since the server started
+//   QUIT  -> closes the connection
+//
+// Requests from all connections go into one queue. Each worker takes whatever is waiting (up to maxBatchSize,
+// or until maxBatchDelayMicros has passed) and scores it with a single predictBatch call.
+//
+// java PredictionServer [modelFile] {[port] [numWorkers] [maxBatchSize]}
+public class PredictionServer {
+
+  static int defaultPort = 4781;
+
+  int port;
+  int numWorkers = Runtime.getRuntime().availableProcessors();
+  int maxBatchSize = 64;
+  long maxBatchDelayMicros = 200;
+  int maxLatencySamples = 1 << 16; // Most recent request latencies kept for the percentiles
+
+  ModelIO.Model model;
+  BlockingQueue<Request> queue = new ArrayBlockingQueue<Request>(1 << 14);
+
+  long startNanos;
+  long completedRequests;
+  long[] latencySamples = new long[maxLatencySamples];
+  int numLatencySamples;
+
+  class Request {
+    double[] features;
+    double[] labels;
+    long arrivalNanos;
+    Exception error;
+    CountDownLatch done = new CountDownLatch(1);
+  }
+
+  public PredictionServer(ModelIO.Model model, int port) {
+    this.model = model;
+    this.port = port;
+  }
+
+  private class Worker implements Runnable {
+    public void run() {
+      List<Request> batch = new ArrayList<Request>(maxBatchSize);
+      while (true) {
+        try {
+          batch.clear();
+          batch.add(queue.take());
+          // Give concurrent requests a moment to arrive so they can share the batch
+          long deadline = System.nanoTime() + maxBatchDelayMicros * 1000;
+          while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) == 0) {
+              long remaining = deadline - System.nanoTime();
+              Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+              if (next == null) {
+                break;
+              }
+              batch.add(next);
+            }
+          }
+          scoreBatch(batch);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void scoreBatch(List<Request> batch) {
+    double[][] features = new double[batch.size()][];
+    double[][] labels = new double[batch.size()][];
+    for (int i = 0; i < batch.size(); ++i) {
+      features[i] = batch.get(i).features;
+      labels[i] = batch.get(i).labels;
+    }
+
+    Exception error = null;
+    try {
+      model.learner.predictBatch(features, labels);
+    } catch (Exception e) {
+      error = e;
+    }
+
+    long now = System.nanoTime();
+    synchronized (this) {
+      for (Request request : batch) {
+        latencySamples[numLatencySamples % maxLatencySamples] = now - request.arrivalNanos;
+        ++numLatencySamples;
+        ++completedRequests;
+      }
+    }
+
+    for (Request request : batch) {
+      request.error = error;
+      request.done.countDown();
+    }
+  }
+
+  String formatLabel(double label) {
+    if (model.labelSchema.valueCount(0) > 0) {
+      return model.labelSchema.attrValue(0, (int) label);
+    }
+    return Double.toString(label);
+  }
+
+  synchronized String stats() {
+    int count = Math.min(numLatencySamples, maxLatencySamples);
+    if (count == 0) {
+      return "requests=0";
+    }
+    long[] sorted = Arrays.copyOf(latencySamples, count);
+    Arrays.sort(sorted);
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    return String.format("requests=%d p50=%.1fus p99=%.1fus throughput=%.0f/s", completedRequests,
+        sorted[count / 2] / 1000.0, sorted[Math.min(count - 1, (int) (count * 0.99))] / 1000.0, completedRequests / seconds);
+  }
+
+  private void handleConnection(Socket socket) {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.equals("QUIT")) {
+          break;
+        } else if (line.equals("STATS")) {
+          writer.println(stats());
+        } else if (line.length() > 0) {
+          Request request = new Request();
+          request.arrivalNanos = System.nanoTime();
+          try {
+            request.features = model.featureSchema.parseRow(line);
+            request.labels = new double[1];
+            queue.put(request);
+            request.done.await();
+            writer.println(request.error == null ? formatLabel(request.labels[0]) : "ERROR " + request.error.getMessage());
+          } catch (Exception e) {
+            writer.println("ERROR " + String.valueOf(e.getMessage()).replace('\n', ' '));
+          }
+        }
+        writer.flush();
+      }
+      socket.close();
+    } catch (Exception e) {
+      System.out.println("Connection failed: " + e);
+    }
+  }
+
+  public void serve() throws Exception {
+    for (int i = 0; i < numWorkers; ++i) {
+      Thread worker = new Thread(new Worker(), "prediction-worker-" + i);
+      worker.setDaemon(true);
+      worker.start();
+    }
+
+    ServerSocket serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    startNanos = System.nanoTime();
+    System.out.println("Serving " + model.learnerName + " predictions on port " + port + " with " + numWorkers + " workers, batches of up to " + maxBatchSize);
+
+    while (true) {
+      final Socket socket = serverSocket.accept();
+      socket.setTcpNoDelay(true);
+      Thread connection = new Thread(() -> handleConnection(socket));
+      connection.setDaemon(true);
+      connection.start();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.out.println("Usage: PredictionServer [modelFile] {[port] [numWorkers] [maxBatchSize]}");
+      return;
+    }
+
+    long startTime = System.nanoTime();
+    ModelIO.Model model = ModelIO.load(args[0], new Random());
+    System.out.println("Loaded " + model.learnerName + " model in (seconds): " + (System.nanoTime() - startTime) / 1e9);
+
+    PredictionServer server = new PredictionServer(model, args.length > 1 ? Integer.parseInt(args[1]) : defaultPort);
+    if (args.length > 2) {
+      server.numWorkers = Integer.parseInt(args[2]);
+    }
+    if (args.length > 3) {
+      server.maxBatchSize = Integer.parseInt(args[3]);
+    }
+    server.serve();
+  }
+}
@@ -0,0 +1,108 @@
+// The perceptron input vectors of a training set: the features, then (if quadratic) every product of two
+// features, then the bias input. A row is expanded the first time it is used and kept while the store is under
+// maxBytes, so later epochs reuse it; rows past the cap are expanded again on each use.
+//
+// A sparse store keeps SparseVectors instead, fetched with getSparse, and fits as many rows in maxBytes as their
+// non-zero entries allow.
+public class QuadraticFeatures {
+
+  Matrix features;
+  boolean quadratic;
+  int numWeights;
+  double[][] expanded;
+  int maxCachedRows;
+  int cachedRows;
+  boolean sparse;
+  SparseVector[] sparseRows;
+  long maxBytes;
+  long cachedBytes;
+  boolean frozen; // Set by expandCached, after which nothing more is stored
+
+  public QuadraticFeatures(Matrix features, boolean quadratic, int numWeights, long maxBytes) {
+    this.features = features;
+    this.quadratic = quadratic;
+    this.numWeights = numWeights;
+    this.expanded = new double[features.rows()][];
+    this.maxCachedRows = (int) Math.min(features.rows(), maxBytes / MemoryFootprint.doubleArrayBytes(numWeights));
+  }
+
+  public QuadraticFeatures(Matrix features, boolean quadratic, int numWeights, long maxBytes, boolean sparse) {
+    this(features, quadratic, numWeights, maxBytes);
+    if (sparse) {
+      this.sparse = true;
+      this.expanded = null;
+      this.sparseRows = new SparseVector[features.rows()];
+      this.maxBytes = maxBytes;
+    }
+  }
+
+  // The expanded row, which callers must not change
+  public double[] get(int row) {
+    double[] values = expanded[row];
+    if (values == null) {
+      values = expand(features.row(row), quadratic, numWeights, true);
+      if (cachedRows < maxCachedRows && !frozen) {
+        expanded[row] = values;
+        ++cachedRows;
+      }
+    }
+    return values;
+  }
+
+  // The expanded row of a sparse store, which callers must not change
+  public SparseVector getSparse(int row) {
+    SparseVector vector = sparseRows[row];
+    if (vector == null) {
+      vector = SparseVector.expand(features.row(row), quadratic, numWeights, true);
+      if (cachedBytes + vector.bytes() <= maxBytes && !frozen) {
+        sparseRows[row] = vector;
+        cachedBytes += vector.bytes();
+        ++cachedRows;
+      }
+    }
+    return vector;
+  }
+
+  // Expands every row that will be kept. After this get no longer changes the store, so threads can share it.
+  public void expandCached() {
+    if (sparse) {
+      for (int row = 0; row < features.rows(); ++row) {
+        getSparse(row);
+      }
+    } else {
+      for (int row = 0; row < features.rows() && cachedRows < maxCachedRows; ++row) {
+        get(row);
+      }
+    }
+    frozen = true;
+  }
+
+  public int cachedRows() {
+    return cachedRows;
+  }
+
+  // withBias sets the last input to 1. Without it the input stays 0, and only the bias weight itself counts.
+  public static double[] expand(double[] row, boolean quadratic, int numWeights, boolean withBias) {
+    double[] currentData = new double[numWeights];
+    int numInputs = row.length;
+
+    // Initialize the first data to be equivalent to the features
+    System.arraycopy(row, 0, currentData, 0, numInputs);
+
+    // Then add the second order data
+    if (quadratic) {
+      int j = numInputs;
+      for (int a = 0; a < numInputs; ++a) {
+        double value = row[a];
+        for (int b = a; b < numInputs; ++b) {
+          currentData[j++] = value * row[b];
+        }
+      }
+    }
+
+    if (withBias) {
+      currentData[numWeights - 1] = 1.0;
+    }
+    return currentData;
+  }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.Executor;
+
+// Appends the product of every pair of features (including each feature squared), the same second order
+// terms PerceptronLearner uses. The label column stays last.
+public class QuadraticTransform extends RowTransform {
+
+  int numFeatures;
+
+  public QuadraticTransform(Matrix inputSchema, Executor executor, int bufferSize) {
+    super(inputSchema, executor, bufferSize);
+
+    numFeatures = inputSchema.cols() - 1;
+    int numProducts = numFeatures * (numFeatures + 1) / 2;
+    outputSchema = schemaWithLabel(numFeatures + numProducts + 1);
+
+    for (int i = 0; i < numFeatures; ++i) {
+      outputSchema.setAttrName(i, inputSchema.attrName(i));
+    }
+    for (int j = numFeatures, a = 0; a < numFeatures; ++a) {
+      for (int b = a; b < numFeatures; ++b) {
+        outputSchema.setAttrName(j++, inputSchema.attrName(a) + "*" + inputSchema.attrName(b));
+      }
+    }
+  }
+
+  public double[] transform(double[] row) {
+    double[] output = new double[outputSchema.cols()];
+    System.arraycopy(row, 0, output, 0, numFeatures);
+    for (int j = numFeatures, a = 0; a < numFeatures; ++a) {
+      for (int b = a; b < numFeatures; ++b) {
+        output[j++] = row[a] * row[b];
+      }
+    }
+    output[output.length - 1] = row[row.length - 1];
+    return output;
+  }
+}
@@ -0,0 +1,145 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Fold results kept on disk between runs. Each result is a small file named by a SHA-256 of everything that
+// determines it: the content of the ARFF file, how it was preprocessed, the learner with its parameters, the seed
+// and the split. Reading a result touches its file, and once there are more than maxEntries files the least
+// recently used ones are deleted.
+public class ResultsCache {
+
+  static final String SUFFIX = ".result";
+
+  // Content hashes of ARFF files, keyed by path, length and modification time so a changed file is hashed again
+  static Map<String, String> fileHashes = new HashMap<String, String>();
+
+  File directory;
+  int maxEntries = 10000;
+  int numEntries;
+
+  public ResultsCache(String directory) throws Exception {
+    this.directory = new File(directory);
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new Exception("Cannot create results cache directory " + directory);
+    }
+    numEntries = listEntries().length;
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  public static String hashFile(String fileName) throws Exception {
+    File file = new File(fileName);
+    String key = file.getCanonicalPath() + "@" + file.length() + "@" + file.lastModified();
+    synchronized (fileHashes) {
+      String hash = fileHashes.get(key);
+      if (hash != null) {
+        return hash;
+      }
+    }
+
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    try {
+      byte[] buffer = new byte[1 << 16];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, count);
+      }
+    } finally {
+      in.close();
+    }
+
+    String hash = toHex(digest.digest());
+    synchronized (fileHashes) {
+      fileHashes.put(key, hash);
+    }
+    return hash;
+  }
+
+  // The split describes the evaluation and fold (e.g. "cross 10 fold 3") and any preprocessing of the data.
+  // Parameters are sorted by name, so the order they were given in does not matter.
+  public static String key(String dataHash, String learnerName, Map<String, String> parameters, long seed, String split) throws Exception {
+    StringBuilder description = new StringBuilder();
+    description.append(dataHash).append('\n').append(learnerName).append('\n');
+    for (Map.Entry<String, String> parameter : new TreeMap<String, String>(parameters).entrySet()) {
+      description.append(parameter.getKey()).append('=').append(parameter.getValue()).append(';');
+    }
+    description.append('\n').append(seed).append('\n').append(split);
+
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    return toHex(digest.digest(description.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private File[] listEntries() {
+    File[] entries = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    return entries == null ? new File[0] : entries;
+  }
+
+  // Returns the stored values, or null when the result has not been computed yet
+  public synchronized double[] get(String key) {
+    File entry = new File(directory, key + SUFFIX);
+    try {
+      String[] fields = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+      double[] values = new double[fields.length];
+      for (int i = 0; i < fields.length; ++i) {
+        values[i] = Double.parseDouble(fields[i]);
+      }
+      entry.setLastModified(System.currentTimeMillis());
+      return values;
+    } catch (Exception e) {
+      return null; // Missing, or left half written by a run that was killed
+    }
+  }
+
+  public synchronized void put(String key, double[] values) throws Exception {
+    File entry = new File(directory, key + SUFFIX);
+    boolean isNew = !entry.exists();
+
+    // Written to a temporary file first, so a reader never sees a partial entry
+    File temp = new File(directory, key + ".tmp");
+    PrintWriter writer = new PrintWriter(temp, "UTF-8");
+    for (int i = 0; i < values.length; ++i) {
+      writer.print((i > 0 ? " " : "") + values[i]);
+    }
+    writer.println();
+    writer.close();
+    Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    if (isNew && ++numEntries > maxEntries) {
+      evict();
+    }
+  }
+
+  // Deletes the least recently used entries down to 90% of maxEntries, so eviction does not run on every put
+  private void evict() {
+    File[] entries = listEntries();
+    final Map<File, Long> lastUsed = new HashMap<File, Long>();
+    for (File entry : entries) {
+      lastUsed.put(entry, entry.lastModified());
+    }
+    Arrays.sort(entries, Comparator.comparing(lastUsed::get));
+
+    int numToDelete = entries.length - maxEntries * 9 / 10;
+    for (int i = 0; i < numToDelete; ++i) {
+      entries[i].delete();
+    }
+    numEntries = entries.length - Math.max(numToDelete, 0);
+  }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+// Staged ingest pipeline built on java.util.concurrent.Flow: an ARFF reader, any number of row transforms,
+// then a consumer (a MatrixBuilder, or a LearnerSubscriber feeding a learner mini-batches). Every stage runs
+// on its own thread and the stages are joined by buffers of bufferSize rows, so reading, transforming and
+// consuming overlap while a slow consumer holds the reader back instead of letting rows pile up in memory.
+//
+// Matrix data = new RowPipeline("datasets/vowel.arff").normalize().quadratic().toMatrix();
+public class RowPipeline {
+
+  static int defaultBufferSize = 1024;
+  static int defaultBatchSize = 256; // Rows per partialFit call when a learner is the consumer
+
+  String fileName;
+  int bufferSize;
+  ExecutorService executor;
+  ArffPublisher source;
+  Flow.Publisher<double[]> tail;
+  Matrix tailSchema;
+  List<RowTransform> stages = new ArrayList<RowTransform>();
+
+  public RowPipeline(String fileName) throws Exception {
+    this(fileName, defaultBufferSize);
+  }
+
+  public RowPipeline(String fileName, int bufferSize) throws Exception {
+    this.fileName = fileName;
+    this.bufferSize = bufferSize;
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "row-pipeline");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.source = new ArffPublisher(fileName, executor, bufferSize);
+    this.tail = source;
+    this.tailSchema = source.getSchema();
+  }
+
+  private RowPipeline add(RowTransform stage) {
+    tail.subscribe(stage);
+    tail = stage;
+    stages.add(stage);
+    tailSchema = stage.getOutputSchema();
+    return this;
+  }
+
+  // Reads the whole file through the stages so far before returning, to find the ranges (see NormalizeTransform)
+  public RowPipeline normalize() throws Exception {
+    double[][] ranges = NormalizeTransform.columnRanges(fileName, stages);
+    return add(new NormalizeTransform(tailSchema, ranges[0], ranges[1], executor, bufferSize));
+  }
+
+  public RowPipeline oneHot() {
+    return add(new OneHotTransform(tailSchema, executor, bufferSize));
+  }
+
+  public RowPipeline quadratic() {
+    return add(new QuadraticTransform(tailSchema, executor, bufferSize));
+  }
+
+  // The columns rows will have when they reach the consumer
+  public Matrix getSchema() {
+    return tailSchema;
+  }
+
+  // Attaches the consumer and starts reading. The consumer is told through onComplete or onError when it is over.
+  // The stage threads are daemons, so a pipeline that is never shut down does not keep the JVM alive.
+  public void start(Flow.Subscriber<double[]> consumer) {
+    tail.subscribe(consumer);
+    executor.execute(source);
+  }
+
+  // Call once the consumer has completed. Stages hand rows on through tasks submitted as rows arrive,
+  // so the executor has to stay open until then.
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  public Matrix toMatrix() throws Exception {
+    MatrixBuilder builder = new MatrixBuilder(tailSchema);
+    start(builder);
+    try {
+      return builder.getResult().get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      shutdown();
+    }
+  }
+
+  // Initializes the learner from the schema, then streams every row into it with partialFit in mini-batches
+  public SupervisedLearner fit(SupervisedLearner learner, int batchSize) throws Exception {
+    int labelColumn = tailSchema.cols() - 1;
+    learner.initialize(new Matrix(tailSchema, 0, 0, 0, labelColumn), new Matrix(tailSchema, 0, labelColumn, 0, 1));
+    LearnerSubscriber trainer = new LearnerSubscriber(learner, tailSchema, batchSize);
+    start(trainer);
+    try {
+      return trainer.getResult().get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      shutdown();
+    }
+  }
+
+  // Builds a pipeline from stage names (normalize, onehot, quadratic) in the order given
+  public static RowPipeline create(String fileName, String[] stages) throws Exception {
+    RowPipeline pipeline = new RowPipeline(fileName);
+    for (String stage : stages) {
+      if (stage.equals("normalize")) {
+        pipeline.normalize();
+      } else if (stage.equals("onehot")) {
+        pipeline.oneHot();
+      } else if (stage.equals("quadratic")) {
+        pipeline.quadratic();
+      } else {
+        throw new Exception("Unrecognized pipeline stage: " + stage);
+      }
+    }
+    return pipeline;
+  }
+}
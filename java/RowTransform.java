@@ -0,0 +1,53 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+// A middle stage of a RowPipeline. Rows are transformed on this stage's own thread and passed on,
+// one row of demand at a time, so the bounded buffers between stages carry the backpressure upstream.
+public abstract class RowTransform extends SubmissionPublisher<double[]> implements Flow.Processor<double[], double[]> {
+
+  Matrix inputSchema;
+  Matrix outputSchema;
+  Flow.Subscription subscription;
+
+  public RowTransform(Matrix inputSchema, Executor executor, int bufferSize) {
+    super(executor, bufferSize);
+    this.inputSchema = inputSchema;
+  }
+
+  // The columns this stage produces, with their names and nominal dictionaries
+  public Matrix getOutputSchema() {
+    return outputSchema;
+  }
+
+  public abstract double[] transform(double[] row);
+
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(1);
+  }
+
+  public void onNext(double[] row) {
+    submit(transform(row));
+    subscription.request(1);
+  }
+
+  public void onError(Throwable error) {
+    closeExceptionally(error);
+  }
+
+  public void onComplete() {
+    close();
+  }
+
+  // Starts an output schema with the given number of columns, copying the label column (the last) from the input
+  protected Matrix schemaWithLabel(int cols) {
+    Matrix schema = new Matrix();
+    schema.setSize(0, cols);
+    int labelColumn = inputSchema.cols() - 1;
+    schema.m_attr_name.set(cols - 1, inputSchema.attrName(labelColumn));
+    schema.m_str_to_enum.set(cols - 1, inputSchema.m_str_to_enum.get(labelColumn));
+    schema.m_enum_to_str.set(cols - 1, inputSchema.m_enum_to_str.get(labelColumn));
+    return schema;
+  }
+}
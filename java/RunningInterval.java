@@ -0,0 +1,47 @@
+// Mean of a stream of scores with a 95% confidence interval, updated one score at a time (Welford's method).
+// The interval uses Student's t, which matters with the handful of folds a cross-validation produces.
+public class RunningInterval {
+
+  // Two-sided 95% critical values of Student's t for 1 to 30 degrees of freedom
+  static final double[] T_95 = new double[]{
+      12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+      2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+      2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+  int count;
+  double mean;
+  double sumSquaredDeviations;
+
+  public void add(double score) {
+    ++count;
+    double delta = score - mean;
+    mean += delta / count;
+    sumSquaredDeviations += delta * (score - mean);
+  }
+
+  public int count() {
+    return count;
+  }
+
+  public double mean() {
+    return mean;
+  }
+
+  // Half the width of the interval, infinite until there are two scores
+  public double halfWidth() {
+    if (count < 2) {
+      return Double.POSITIVE_INFINITY;
+    }
+    int degreesOfFreedom = count - 1;
+    double t = degreesOfFreedom <= T_95.length ? T_95[degreesOfFreedom - 1] : 1.96;
+    return t * Math.sqrt(sumSquaredDeviations / degreesOfFreedom / count);
+  }
+
+  public double lower() {
+    return mean - halfWidth();
+  }
+
+  public double upper() {
+    return mean + halfWidth();
+  }
+}
@@ -0,0 +1,78 @@
+// The non-zero entries of a vector, as parallel arrays of their indexes (in increasing order) and values. One-hot
+// encoded rows are mostly zeros, and so are their quadratic products, so the perceptron only sums and updates
+// the weights of these entries.
+public class SparseVector {
+
+  int[] indices;
+  double[] values;
+  int size; // Entries in use
+
+  public SparseVector(int capacity) {
+    indices = new int[capacity];
+    values = new double[capacity];
+  }
+
+  void add(int index, double value) {
+    indices[size] = index;
+    values[size] = value;
+    ++size;
+  }
+
+  // Retained size, for the feature store's budget
+  long bytes() {
+    return 24 + MemoryFootprint.align(16 + 4L * indices.length) + MemoryFootprint.doubleArrayBytes(values.length);
+  }
+
+  // The same entries QuadraticFeatures.expand gives, without the zeros. Products are only formed between
+  // non-zero features, and come out in the same order as in the dense vector.
+  public static SparseVector expand(double[] row, boolean quadratic, int numWeights, boolean withBias) {
+    int numInputs = row.length;
+    int nonZero = 0;
+    for (int a = 0; a < numInputs; ++a) {
+      if (row[a] != 0.0) {
+        ++nonZero;
+      }
+    }
+
+    int capacity = nonZero + (quadratic ? nonZero * (nonZero + 1) / 2 : 0) + (withBias ? 1 : 0);
+    SparseVector vector = new SparseVector(capacity);
+    for (int a = 0; a < numInputs; ++a) {
+      if (row[a] != 0.0) {
+        vector.add(a, row[a]);
+      }
+    }
+
+    if (quadratic) {
+      // The products of feature a start after those of every earlier feature: numInputs - k of them for each k < a
+      for (int i = 0; i < nonZero; ++i) {
+        int a = vector.indices[i];
+        double value = vector.values[i];
+        int start = numInputs + a * numInputs - a * (a - 1) / 2;
+        for (int j = i; j < nonZero; ++j) {
+          int b = vector.indices[j];
+          vector.add(start + (b - a), value * vector.values[j]);
+        }
+      }
+    }
+
+    if (withBias) {
+      vector.add(numWeights - 1, 1.0);
+    }
+    return vector;
+  }
+
+  // Share of non-zero values among the features of (up to maxRows of) the rows
+  public static double density(Matrix features, int maxRows) {
+    int rows = Math.min(features.rows(), maxRows);
+    long nonZero = 0;
+    for (int i = 0; i < rows; ++i) {
+      double[] row = features.row(i);
+      for (double value : row) {
+        if (value != 0.0) {
+          ++nonZero;
+        }
+      }
+    }
+    return rows == 0 ? 1.0 : (double) nonZero / ((long) rows * features.cols());
+  }
+}
@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Adaptive search over NeuralNet configurations. Every candidate starts with a small epoch budget,
+// only the best 1/reductionFactor of them survive each rung, and the survivors keep training from
+// their current weights while the budget grows by reductionFactor.
+public class SuccessiveHalving {
+
+  Random rand;
+  int numConfigurations;
+
+  // Constants
+  int initialEpochs = 5; // Epoch budget of the first rung
+  int reductionFactor = 3; // Keep the top 1/reductionFactor candidates, and multiply the budget by it each rung
+  int[] hiddenNodeChoices = new int[]{2, 4, 8, 16, 32};
+  double minLearningRate = 0.01;
+  double maxLearningRate = 1.0;
+  double[] momentumChoices = new double[]{0.0, 0.5, 0.9};
+
+  public SuccessiveHalving(Random rand, int numConfigurations) {
+    this.rand = rand;
+    this.numConfigurations = numConfigurations;
+  }
+
+  private class Candidate {
+    Map<String, String> parameters;
+    NeuralNet net;
+    int epochsTrained;
+    double score;
+
+    public Candidate(Map<String, String> parameters, NeuralNet net) {
+      this.parameters = parameters;
+      this.net = net;
+    }
+  }
+
+  // Random configuration, learning rate is sampled on a log scale
+  private Map<String, String> sampleConfiguration() {
+    Map<String, String> parameters = new LinkedHashMap<String, String>();
+    int hiddenNodes = hiddenNodeChoices[rand.nextInt(hiddenNodeChoices.length)];
+    double logRate = Math.log(minLearningRate) + rand.nextDouble() * (Math.log(maxLearningRate) - Math.log(minLearningRate));
+    double momentum = momentumChoices[rand.nextInt(momentumChoices.length)];
+
+    parameters.put("hiddenNodes", Integer.toString(hiddenNodes));
+    parameters.put("learningRate", Double.toString(Math.exp(logRate)));
+    parameters.put("momentum", Double.toString(momentum));
+    return parameters;
+  }
+
+  // Returns the best network found, already trained for the final rung's budget
+  public NeuralNet search(Matrix trainFeatures, Matrix trainLabels, Matrix validationFeatures, Matrix validationLabels) throws Exception {
+
+    final boolean isContinuous = trainLabels.valueCount(0) == 0;
+    List<Candidate> candidates = new ArrayList<Candidate>();
+
+    for (int i = 0; i < numConfigurations; ++i) {
+      Map<String, String> parameters = sampleConfiguration();
+      NeuralNet net = new NeuralNet(rand);
+      for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+        net.setParameter(parameter.getKey(), parameter.getValue());
+      }
+      net.initializeNetwork(trainFeatures, trainLabels);
+      candidates.add(new Candidate(parameters, net));
+    }
+
+    int rung = 0;
+    int epochBudget = initialEpochs;
+    long totalEpochs = 0;
+
+    while (true) {
+      for (Candidate candidate : candidates) {
+        // Survivors continue from their current weights, so only the extra epochs are paid for
+        while (candidate.epochsTrained < epochBudget) {
+          candidate.net.trainEpoch(trainFeatures, trainLabels);
+          ++candidate.epochsTrained;
+          ++totalEpochs;
+        }
+        candidate.score = candidate.net.measureAccuracy(validationFeatures, validationLabels, null);
+      }
+
+      // Accuracy when nominal (higher is better), RMSE when continuous (lower is better)
+      Collections.sort(candidates, new Comparator<Candidate>() {
+        public int compare(Candidate c1, Candidate c2) {
+          return isContinuous ? Double.compare(c1.score, c2.score) : Double.compare(c2.score, c1.score);
+        }
+      });
+
+      System.out.println("Rung " + rung + ": " + candidates.size() + " candidates at " + epochBudget + " epochs, best score " + candidates.get(0).score + " " + candidates.get(0).parameters);
+
+      if (candidates.size() <= 1) {
+        break;
+      }
+
+      int numSurvivors = Math.max(1, candidates.size() / reductionFactor);
+      candidates = new ArrayList<Candidate>(candidates.subList(0, numSurvivors));
+      epochBudget *= reductionFactor;
+      ++rung;
+    }
+
+    Candidate best = candidates.get(0);
+    System.out.println("Total epochs trained across all candidates: " + totalEpochs);
+    System.out.println("Best configuration: " + best.parameters);
+    return best.net;
+  }
+}
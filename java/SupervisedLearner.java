@@ -5,7 +5,10 @@
 
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 
 public abstract class SupervisedLearner {
 
@@ -18,9 +21,65 @@ public abstract class SupervisedLearner {
 	// support multi-dimensional label vectors.)
 	public abstract void predict(double[] features, double[] labels) throws Exception;
 
+  // Predicts many rows at once. Learners with a faster path for several rows can override this,
+  // and predict must not change the model so that batches can run on several threads.
+  public void predictBatch(double[][] features, double[][] labels) throws Exception {
+    for (int i = 0; i < features.length; ++i) {
+      predict(features[i], labels[i]);
+    }
+  }
+
+  // Incremental training. initialize builds an untrained model from the schemas alone (matrices with no rows are fine),
+  // then each partialFit call learns from one batch of rows on top of everything seen before, so data can arrive
+  // as a stream of mini-batches that never has to fit in memory at once.
+  public boolean supportsPartialFit() {
+    return false;
+  }
+
+  // Whether train takes a single pass over the rows, so that partialFit over the same rows gives the model train
+  // would. Learners that train for several epochs do not, and a learning curve retrains them at every size.
+  public boolean trainsInOnePass() {
+    return false;
+  }
+
+  public void initialize(Matrix featureSchema, Matrix labelSchema) throws Exception {
+    throw new Exception(getClass().getName() + " cannot be trained incrementally");
+  }
+
+  public void partialFit(Matrix features, Matrix labels) throws Exception {
+    throw new Exception(getClass().getName() + " cannot be trained incrementally");
+  }
+
   // Some learning algorithms need to define their stopping criteria based on how the algorithm performs on the validation data set, which will be overriden
   public void setValidationSet(Matrix validationFeatures, Matrix validationLabels) {}
 
+  // Saves everything predict needs in a compact binary form (see ModelIO for the file header)
+  public void writeModel(DataOutputStream out) throws Exception {
+    throw new Exception(getClass().getName() + " cannot be saved");
+  }
+
+  // Restores a model written by writeModel, after which predict can be called without training
+  public void readModel(DataInputStream in) throws Exception {
+    throw new Exception(getClass().getName() + " cannot be loaded");
+  }
+
+  // Estimated bytes the trained model keeps on the heap, or -1 if unknown. By default this is the size of what
+  // writeModel produces, which is close for learners made of weight arrays.
+  public long estimateModelBytes() {
+    try {
+      DataOutputStream out = new DataOutputStream(OutputStream.nullOutputStream());
+      writeModel(out);
+      return out.size();
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  // Learners with tunable settings override this so they can be configured by name (e.g. from a parameter search)
+  public void setParameter(String name, String value) throws Exception {
+    throw new Exception("Unrecognized parameter: " + name);
+  }
+
 	// The model must be trained before you call this method. If the label is nominal,
 	// it returns the predictive accuracy. If the label is continuous, it returns
 	// the root mean squared error (RMSE). If confusion is non-NULL, and the
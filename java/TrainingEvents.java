@@ -0,0 +1,115 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Java Flight Recorder events that mark what the learners are doing, so a recording's CPU and allocation samples
+// can be lined up with dataset loads, folds, epochs, tree splits and kNN queries. They are recorded with e.g.
+//
+//   java -XX:StartFlightRecording=filename=run.jfr MLSystemManager ...
+//
+// and cost next to nothing otherwise: the callers only fill in the fields when shouldCommit() says the event
+// is enabled and over its threshold.
+public class TrainingEvents {
+
+  @Name("ml.DatasetLoad")
+  @Label("Dataset Load")
+  @Category("Machine Learning")
+  @Description("An ARFF file read into a Matrix")
+  static class DatasetLoad extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int cols;
+
+    @Label("Off Heap")
+    boolean offHeap;
+
+    @Label("From Cache")
+    @Description("Copied from the resident dataset cache rather than parsed")
+    boolean fromCache;
+  }
+
+  @Name("ml.Fold")
+  @Label("Fold")
+  @Category("Machine Learning")
+  @Description("Training and evaluating one fold of an evaluation")
+  static class Fold extends Event {
+    @Label("Learner")
+    String learner;
+
+    @Label("Fold")
+    int fold;
+
+    @Label("Training Rows")
+    int trainRows;
+
+    @Label("Test Rows")
+    int testRows;
+
+    @Label("Accuracy")
+    @Description("Accuracy for nominal labels, RMSE for continuous ones")
+    double accuracy;
+  }
+
+  @Name("ml.Epoch")
+  @Label("Epoch")
+  @Category("Machine Learning")
+  @Description("One pass of NeuralNet or PerceptronLearner over its training set")
+  static class Epoch extends Event {
+    @Label("Learner")
+    String learner;
+
+    @Label("Epoch")
+    int epoch;
+
+    @Label("Samples")
+    int samples;
+
+    @Label("Samples per Second")
+    double samplesPerSecond;
+
+    @Label("Accuracy")
+    @Description("Accuracy the stopping rule went by: on the validation set for NeuralNet, counted during the pass (or on the holdout) for PerceptronLearner")
+    double accuracy;
+  }
+
+  @Name("ml.TreeSplit")
+  @Label("Tree Split")
+  @Category("Machine Learning")
+  @Description("A DecisionTree node divided on its best feature")
+  static class TreeSplit extends Event {
+    @Label("Feature")
+    String feature;
+
+    @Label("Instances")
+    int instances;
+
+    @Label("Candidate Features")
+    int candidateFeatures;
+
+    @Label("Remaining Information")
+    @Description("Expected entropy of the labels after the split, in bits")
+    double information;
+  }
+
+  @Name("ml.KnnQueryBatch")
+  @Label("kNN Query Batch")
+  @Category("Machine Learning")
+  @Description("A batch of InstanceBasedLearner predictions")
+  static class KnnQueryBatch extends Event {
+    @Label("Queries")
+    int queries;
+
+    @Label("Stored Instances")
+    int storedInstances;
+
+    @Label("k")
+    int k;
+  }
+}